@@ -0,0 +1,96 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Cost per child of breeding: the whole of mating (selection, crossover, mutation and scoring) with the command-line defaults, each crossover operator on its own, and repairing a child with checkArrayForIntegrity.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BreederBenchmark {
+
+    private static final int POPULATION_SIZE = 64;
+    @Param({"25:15x100", "250:100x1000", "1000:1000x1000", "10000:10000x10000"})
+    public String scenario;
+    private SalesmanMap map;
+    private GeneticAlgorithmConfig config;
+    private Breeder breeder;
+    private Population current;
+    private Population next;
+    private Selection selection;
+    private int[] child;
+    // Half of each parent, so full of duplicates and missing sites like a crossed child
+    private int[] unrepaired;
+
+    @State(Scope.Thread)
+    public static class Operator {
+
+        @Param({"UNIFORM", "OX", "PMX", "ERX", "CYCLE"})
+        public String crossover;
+    }
+
+    @Setup
+    public void setUp() {
+        map = Scenarios.createMap(scenario);
+        config = new GeneticAlgorithmConfig();
+        config.setPopulationSize(POPULATION_SIZE);
+        Rng random = new Rng(Scenarios.SEED);
+        breeder = new Breeder(map, config, random);
+        current = Scenarios.createPopulation(map, POPULATION_SIZE, random);
+        next = new Population(POPULATION_SIZE, map.getNumSites());
+        selection = new Selection(config);
+        selection.prepare(random);
+
+        child = new int[map.getNumSites()];
+        unrepaired = new int[map.getNumSites()];
+        int[] tours = current.getTours();
+        int offset1 = current.getOffset(current.getRanked(0));
+        int offset2 = current.getOffset(current.getRanked(1));
+        for (int index = 0; index < unrepaired.length; index++) {
+            unrepaired[index] = tours[(random.nextBoolean() ? offset1 : offset2) + index];
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POPULATION_SIZE)
+    public Population mate() {
+        breeder.setWork(current, selection, next, 0, POPULATION_SIZE);
+        breeder.breed();
+        return next;
+    }
+
+    @Benchmark
+    public int[] crossover(Operator operator) {
+        int[] tours = current.getTours();
+        CrossoverOperator.parse(operator.crossover).cross(tours, current.getOffset(current.getRanked(0)), current.getOffset(current.getRanked(1)), child, breeder);
+        return child;
+    }
+
+    @Benchmark
+    public int[] repair() {
+        System.arraycopy(unrepaired, 0, child, 0, child.length);
+        breeder.checkArrayForIntegrity(child);
+        return child;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Cost of SalesmanMap.getDistance between random pairs of sites, and of scoring a whole itinerary, with and without the distance matrix.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+// A distance matrix for 10000 sites is 800 MB
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class DistanceBenchmark {
+
+    private static final int PAIRS = 1024;
+    @Param({"25:15x100", "250:100x1000", "1000:1000x1000", "10000:10000x10000"})
+    public String scenario;
+    @Param({"false", "true"})
+    public boolean matrix;
+    private SalesmanMap map;
+    private int[] starts;
+    private int[] dests;
+    private int[] itinerary;
+
+    @Setup
+    public void setUp() {
+        map = Scenarios.createMap(scenario);
+        if (matrix) {
+            map.precomputeDistances();
+        }
+        Rng random = new Rng(Scenarios.SEED);
+        starts = new int[PAIRS];
+        dests = new int[PAIRS];
+        for (int pair = 0; pair < PAIRS; pair++) {
+            starts[pair] = random.nextInt(map.getNumSites());
+            dests[pair] = random.nextInt(map.getNumSites());
+        }
+        itinerary = Itineraries.generateRandomItinerary(map.getLastSite(), random);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public double getDistance() {
+        double total = 0;
+        for (int pair = 0; pair < PAIRS; pair++) {
+            total += map.getDistance(starts[pair], dests[pair]);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double getTotalTravel() {
+        return Itineraries.getTotalTravel(itinerary, map);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Generations per second of a whole genetic trial with the command-line defaults, apart from the population size.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenerationsBenchmark {
+
+    private static final int GENERATIONS = 20;
+    @Param({"25:15x100", "250:100x1000", "1000:1000x1000", "10000:10000x10000"})
+    public String scenario;
+    @Param({"25", "100"})
+    public int populationSize;
+    private SalesmanMap map;
+    private GeneticAlgorithmConfig config;
+    private Rng random;
+    private PrintStream out;
+
+    @Setup
+    public void setUp() {
+        map = Scenarios.createMap(scenario);
+        config = new GeneticAlgorithmConfig();
+        config.setPopulationSize(populationSize);
+        config.setGenerations(GENERATIONS);
+        random = new Rng(Scenarios.SEED);
+        out = new PrintStream(new OutputStream() {
+
+            @Override
+            public void write(int b) {
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GENERATIONS)
+    public double generations() throws Exception {
+        return new GeneticAlgorithm(map, config, null, random, out).run();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+
+/**
+ * <p>Builds the maps the benchmarks run against. A scenario is written "sites:heightxwidth", e.g. "25:15x100" for the command-line defaults.</p>
+ * <p>Site placement is seeded, so every fork and every run benchmarks the same map.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class Scenarios {
+
+    static final long SEED = 20120301L;
+
+    /**
+     * 
+     * @param scenario
+     * @return A map of the given size with sites placed at distinct random points
+     */
+    static SalesmanMap createMap(String scenario) {
+        int colon = scenario.indexOf(':');
+        int times = scenario.indexOf('x', colon);
+        if (colon == -1 || times == -1) {
+            throw new RuntimeException("Expected scenario like 25:15x100, instead found: " + scenario);
+        }
+        int sites = Integer.parseInt(scenario.substring(0, colon));
+        int height = Integer.parseInt(scenario.substring(colon + 1, times));
+        int width = Integer.parseInt(scenario.substring(times + 1));
+        if ((long) height * (long) width < sites) {
+            throw new RuntimeException("Cannot fit " + sites + " sites on a map that is " + height + " x " + width);
+        }
+
+        Rng random = new Rng(SEED);
+        LongHashSet occupied = new LongHashSet(sites);
+        int[] rows = new int[sites];
+        int[] cols = new int[sites];
+        for (int site = 0; site < sites; site++) {
+            int row, col;
+            do {
+                row = random.nextInt(height);
+                col = random.nextInt(width);
+            } while (!occupied.add((long) row * width + col));
+            rows[site] = row;
+            cols[site] = col;
+        }
+        return SalesmanMap.fromSites(height, width, rows, cols);
+    }
+
+    /**
+     * 
+     * @param map
+     * @param size
+     * @param random
+     * @return A ranked population of random itineraries
+     */
+    static Population createPopulation(SalesmanMap map, int size, Rng random) {
+        Population population = new Population(size, map.getNumSites());
+        int[] itinerary = new int[map.getNumSites()];
+        for (int index = 0; index < size; index++) {
+            Itineraries.fillRandomItinerary(itinerary, random);
+            population.set(index, itinerary, Itineraries.getTotalTravel(itinerary, map));
+        }
+        population.rank();
+        return population;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Cost of picking the parents for one generation: preparing the selection, then picking two parents for every child. Independent of the map, so sized by population instead.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectionBenchmark {
+
+    @Param({"25", "250", "1000", "10000"})
+    public int populationSize;
+    @Param({"RANK", "TOURNAMENT", "SUS"})
+    public String scheme;
+    private Selection selection;
+    private Rng random;
+    private final int[] parents = new int[2];
+
+    @Setup
+    public void setUp() {
+        GeneticAlgorithmConfig config = new GeneticAlgorithmConfig();
+        config.setPopulationSize(populationSize);
+        config.setSelection(SelectionScheme.parse(scheme));
+        selection = new Selection(config);
+        random = new Rng(Scenarios.SEED);
+    }
+
+    @Benchmark
+    public int[] selectGeneration() {
+        selection.prepare(random);
+        for (int child = 0; child < populationSize; child++) {
+            selection.pickTwoParents(random, child, parents);
+        }
+        return parents;
+    }
+}
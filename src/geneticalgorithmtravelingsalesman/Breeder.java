@@ -0,0 +1,320 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+/**
+ * <p>Breeds and scores a range of children for the next generation. Each worker thread has its own breeder, with its own random number generator and scratch buffers, so nothing is allocated per child and nothing mutable is shared between workers.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class Breeder implements Callable<Object> {
+
+    private final SalesmanMap map;
+    private final GeneticAlgorithmConfig config;
+    private final Rng random;
+    private final int[] child;
+    private final int[] parents = new int[2];
+    private final LocalSearch localSearch;
+    // Null if config doesn't cache fitness
+    private final FitnessCache fitnessCache;
+    // Starts at the configured rate, but raised while the population lacks diversity
+    private double mutationRate;
+    // Null unless collecting metrics
+    private PhaseTimes phaseTimes = null;
+    private boolean isTimingChild = false;
+    // Scratch buffers for repairing children, indexed by site
+    private final int[] instanceCount;
+    private final int[] position;
+    private final int[] secondPosition;
+    private final int[] missingSites;
+    private final int[] duplicatedSites;
+    // Scratch buffers for the crossover operators
+    final int[] marks;
+    final int[] parentPosition;
+    final int[] neighbors;
+    final int[] neighborCounts;
+    final int[] unvisited;
+    // The work for the current generation, set by setWork
+    private Population current;
+    private Population next;
+    private Selection selection;
+    private int from;
+    private int to;
+
+    /**
+     * 
+     * @param map
+     * @param config
+     * @param random
+     */
+    Breeder(SalesmanMap map, GeneticAlgorithmConfig config, Rng random) {
+        this.map = map;
+        this.config = config;
+        this.random = random;
+        this.mutationRate = config.getMutationRate();
+        this.child = new int[map.getNumSites()];
+        this.localSearch = config.getLocalSearch() == LocalSearchMode.NONE ? null : new LocalSearch(map, config.getNeighbors());
+        this.fitnessCache = config.getFitnessCacheSize() > 0 ? new FitnessCache(config.getFitnessCacheSize()) : null;
+        this.instanceCount = new int[child.length];
+        this.position = new int[child.length];
+        this.secondPosition = new int[child.length];
+        this.missingSites = new int[child.length];
+        this.duplicatedSites = new int[child.length];
+        this.marks = new int[child.length];
+        this.parentPosition = new int[child.length];
+        this.neighbors = new int[child.length * 4];
+        this.neighborCounts = new int[child.length];
+        this.unvisited = new int[child.length];
+    }
+
+    Rng getRandom() {
+        return random;
+    }
+
+    SalesmanMap getMap() {
+        return map;
+    }
+
+    /**
+     * 
+     * @return Rate the mutation operators use, which may differ from the config's
+     */
+    double getMutationRate() {
+        return mutationRate;
+    }
+
+    void setMutationRate(double mutationRate) {
+        this.mutationRate = mutationRate;
+    }
+
+    /**
+     * 
+     * @return Null if config doesn't use local search
+     */
+    LocalSearch getLocalSearch() {
+        return localSearch;
+    }
+
+    GeneticAlgorithmConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * 
+     * @param phaseTimes Where to add the time spent in each phase of breeding. Null to not time.
+     */
+    void setPhaseTimes(PhaseTimes phaseTimes) {
+        this.phaseTimes = phaseTimes;
+    }
+
+    PhaseTimes getPhaseTimes() {
+        return phaseTimes;
+    }
+
+    /**
+     * 
+     * @param current Ranked population to pick parents from. Only read, so safe to share between breeders.
+     * @param selection Prepared for this generation. Only read, so safe to share between breeders.
+     * @param next Population to put children in. Each breeder writes only to its own range.
+     * @param from First child to breed
+     * @param to One past the last child to breed
+     */
+    void setWork(Population current, Selection selection, Population next, int from, int to) {
+        this.current = current;
+        this.selection = selection;
+        this.next = next;
+        this.from = from;
+        this.to = to;
+    }
+
+    public Object call() {
+        if (phaseTimes == null) {
+            breed();
+            return null;
+        }
+        // Running on a worker thread, so the thread running the genetic algorithm doesn't see these allocations
+        long allocated = PhaseTimes.getAllocatedBytes();
+        breed();
+        phaseTimes.allocatedBytes += PhaseTimes.getAllocatedBytes() - allocated;
+        return null;
+    }
+
+    /**
+     * <p>Breed and score every child in the range given to setWork.</p>
+     */
+    void breed() {
+        final int[] tours = current.getTours();
+        for (int index = from; index < to; index++) {
+            isTimingChild = phaseTimes != null && (index - from) % PhaseTimes.SAMPLE_INTERVAL == 0;
+            long lap = isTimingChild ? System.nanoTime() : 0;
+
+            selection.pickTwoParents(random, index, parents);
+            int parent1 = current.getRanked(parents[0]);
+            int parent2 = current.getRanked(parents[1]);
+            if (isTimingChild) {
+                phaseTimes.lap(PhaseTimes.SELECTION, lap);
+            }
+
+            double distance = mate(tours, parent1, parent2, child);
+            if (config.getLocalSearch() == LocalSearchMode.CHILDREN) {
+                lap = isTimingChild ? System.nanoTime() : 0;
+                distance -= localSearch.improve(child);
+                if (isTimingChild) {
+                    phaseTimes.lap(PhaseTimes.LOCAL_SEARCH, lap);
+                }
+            }
+            next.set(index, child, distance);
+
+            if (isTimingChild) {
+                phaseTimes.sampledChildren++;
+            }
+        }
+        isTimingChild = false;
+        if (phaseTimes != null) {
+            phaseTimes.children += to - from;
+            if (fitnessCache != null) {
+                phaseTimes.fitnessCacheHits += fitnessCache.getHits();
+                phaseTimes.fitnessCacheMisses += fitnessCache.getMisses();
+                fitnessCache.clearCounts();
+            }
+        }
+    }
+
+    /**
+     * <p>If the child is only a mutated copy of the first parent, its total travel is the parent's adjusted by the edges the mutations changed. Otherwise the whole itinerary is scored, unless the fitness cache has seen it.</p>
+     * @param tours Flat array holding both parents
+     * @param parent1 Index of first parent in current population
+     * @param parent2 Index of second parent in current population
+     * @param child Overwritten with the child
+     * @return Total travel of the child
+     */
+    private double mate(int[] tours, int parent1, int parent2, int[] child) {
+        long lap = isTimingChild ? System.nanoTime() : 0;
+        boolean isCrossed = config.getCrossover().crossover(tours, current.getOffset(parent1), current.getOffset(parent2), child, this);
+        if (isTimingChild) {
+            lap = phaseTimes.lap(PhaseTimes.CROSSOVER, lap);
+        }
+        // Includes scoring the mutations incrementally
+        double delta = config.getMutation().mutate(child, this);
+        if (isTimingChild) {
+            lap = phaseTimes.lap(PhaseTimes.MUTATION, lap);
+        }
+
+        double distance;
+        if (!isCrossed && !Double.isNaN(delta)) {
+            distance = current.getFitness(parent1) + delta;
+        } else if (fitnessCache != null && fitnessCache.isWorthLooking()) {
+            long key = FitnessCache.hash(child);
+            distance = fitnessCache.get(key);
+            if (Double.isNaN(distance)) {
+                distance = Itineraries.getTotalTravel(child, map);
+                fitnessCache.put(key, distance);
+            }
+        } else {
+            distance = Itineraries.getTotalTravel(child, map);
+        }
+        if (isTimingChild) {
+            phaseTimes.lap(PhaseTimes.EVALUATION, lap);
+        }
+        return distance;
+    }
+
+    /**
+     * 
+     * @param child A valid itinerary
+     */
+    void recordPositions(int[] child) {
+        for (int index = 0; index < child.length; index++) {
+            position[child[index]] = index;
+        }
+    }
+
+    /**
+     * <p>Repair a child so every site appears exactly once, in a single linear pass using the breeder's scratch buffers.</p>
+     * <p>Same result as repeatedly swapping the smallest missing site for one (randomly the first or second) occurrence of the smallest duplicated site: the missing and duplicated sites are paired off in ascending order.</p>
+     * @param child
+     */
+    void checkArrayForIntegrity(int[] child) {
+        final long start = isTimingChild ? System.nanoTime() : 0;
+
+        // There will likely be duplicates and some without copies due to crossover. Fix this.
+        Arrays.fill(instanceCount, 0);
+        for (int index = 0; index < child.length; index++) {
+            int site = child[index];
+            int count = ++instanceCount[site];
+            if (count == 1) {
+                position[site] = index;
+            } else if (count == 2) {
+                secondPosition[site] = index;
+            } else {
+                throw new RuntimeException("ASSERTION FAILED: Expected 0, 1 or 2 instances, instead found: " + count);
+            }
+        }
+
+        int numMissing = 0;
+        int numDuplicated = 0;
+        for (int site = 0; site < instanceCount.length; site++) {
+            if (instanceCount[site] == 0) {
+                missingSites[numMissing++] = site;
+            } else if (instanceCount[site] == 2) {
+                duplicatedSites[numDuplicated++] = site;
+            }
+        }
+
+        if (numMissing > numDuplicated) {
+            throw new RuntimeException("ASSERTION FAILED: Found a site with no instances, but couldn't find site with two instances.");
+        } else if (numMissing < numDuplicated) {
+            throw new RuntimeException("ASSERTION FAILED: Found a site with two instances, but couldn't find site with no instances.");
+        }
+
+        SWAP_TWO_SITES:
+        for (int i = 0; i < numMissing; i++) {
+            int siteWithZeroInstances = missingSites[i];
+            int siteWithTwoInstances = duplicatedSites[i];
+
+            // Should we swap the first site of two, or the second
+            boolean isSwapFirst = random.nextBoolean();
+            if (isSwapFirst) {
+                child[position[siteWithTwoInstances]] = siteWithZeroInstances;
+                position[siteWithZeroInstances] = position[siteWithTwoInstances];
+                position[siteWithTwoInstances] = secondPosition[siteWithTwoInstances];
+            } else {
+                child[secondPosition[siteWithTwoInstances]] = siteWithZeroInstances;
+                position[siteWithZeroInstances] = secondPosition[siteWithTwoInstances];
+            }
+        }
+
+        if (isTimingChild) {
+            // Repair happens during crossover, so take its time out of crossover's
+            long elapsed = System.nanoTime() - start;
+            phaseTimes.nanos[PhaseTimes.REPAIR] += elapsed;
+            phaseTimes.nanos[PhaseTimes.CROSSOVER] -= elapsed;
+        }
+    }
+
+    /**
+     * <p>Put site at index of a child that is a valid itinerary, then repair it in constant time. Same result as setting the site then calling checkArrayForIntegrity, but relies on recordPositions having been called.</p>
+     * @param child
+     * @param index
+     * @param site
+     */
+    void replaceSite(int[] child, int index, int site) {
+        int oldSite = child[index];
+        if (oldSite == site) {
+            return;
+        }
+
+        // Site is now duplicated at index and its old position, and oldSite is missing
+        int otherIndex = position[site];
+        boolean isSwapFirst = random.nextBoolean();
+        int replaced = (isSwapFirst == (index < otherIndex)) ? index : otherIndex;
+        child[index] = site;
+        child[replaced] = oldSite;
+        position[oldSite] = replaced;
+        position[site] = (replaced == index) ? otherIndex : index;
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * <p>Saves the state of a run of genetic trials to a file every so many generations, so a run that is killed can be resumed (see resume) with the same results it would have had.</p>
+ * <p>A checkpoint holds the map, config, number of trials, the generator that seeds the trials, the results of finished trials and, for the trial in progress, its generation, population and generator. Trials must run one after the other, without islands.</p>
+ * <p>The genetic algorithm only copies its population into one of two snapshots; a background thread encodes and writes it. If both snapshots are still being written, the checkpoint is skipped rather than wait. Each checkpoint is written to a temporary file, forced to disk, then moved over the old one, so the file is always a complete checkpoint.</p>
+ * <p>Format, big-endian: magic, version, distance matrix flag, map and config (as in MigrationProtocol), genetic trials, random trials, seeding generator, finished trials and their distances, then whether a trial is in progress and if so its trial, generation, generator, population size and each itinerary (as in MigrationProtocol) with its distance.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class Checkpointer implements Closeable {
+
+    private static final int MAGIC = 0x47415453;
+    private static final int VERSION = 6;
+    private static final int SNAPSHOTS = 2;
+    private final File file;
+    private final int interval;
+    private final SalesmanMap map;
+    private final GeneticAlgorithmConfig config;
+    private final int geneticTrials;
+    private final int randomTrials;
+    private final byte[] seedGenerator;
+    private final double[] results;
+    private int finishedTrials = 0;
+    // Loaded by resume, until the trial in progress is resumed
+    private Snapshot resumeSnapshot = null;
+    private final BlockingQueue<Snapshot> free = new ArrayBlockingQueue<Snapshot>(SNAPSHOTS);
+    private final BlockingQueue<Snapshot> pending = new LinkedBlockingQueue<Snapshot>();
+    private final Thread thread;
+    private volatile IOException error = null;
+    // Only used by the writer thread
+    private final Buffer buffer = new Buffer();
+    private final DataOutputStream out = new DataOutputStream(buffer);
+
+    /**
+     * <p>A copy of the state at one generation, or after a trial finished.</p>
+     */
+    private static class Snapshot {
+
+        int finishedTrials;
+        // Trial in progress, starting at 1, or 0 if none
+        int trial = 0;
+        int generation;
+        byte[] generator;
+        int[] tours;
+        double[] fitness;
+        boolean isClose = false;
+    }
+
+    /**
+     * <p>Lets the encoded checkpoint be written without copying it.</p>
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+
+        Buffer() {
+            super(1 << 16);
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    /**
+     *
+     * @param file Where to write checkpoints
+     * @param interval Generations between checkpoints
+     * @param map
+     * @param config
+     * @param geneticTrials
+     * @param randomTrials
+     * @param seedGenerator Generator that will seed the trials, before it seeds any
+     */
+    Checkpointer(File file, int interval, SalesmanMap map, GeneticAlgorithmConfig config, int geneticTrials, int randomTrials, Rng seedGenerator) {
+        this(file, interval, map, config, geneticTrials, randomTrials, saveGenerator(seedGenerator), new double[geneticTrials]);
+    }
+
+    private Checkpointer(File file, int interval, SalesmanMap map, GeneticAlgorithmConfig config, int geneticTrials, int randomTrials, byte[] seedGenerator, double[] results) {
+        if (interval < 1) {
+            throw new RuntimeException("Checkpoint interval must be at least 1, instead found: " + interval);
+        }
+        if (config.getIslands() > 1) {
+            throw new RuntimeException("Checkpoints don't support islands");
+        }
+        this.file = file;
+        this.interval = interval;
+        this.map = map;
+        this.config = config;
+        this.geneticTrials = geneticTrials;
+        this.randomTrials = randomTrials;
+        this.seedGenerator = seedGenerator;
+        this.results = results;
+        for (int i = 0; i < SNAPSHOTS; i++) {
+            free.add(new Snapshot());
+        }
+        this.thread = new Thread(new Runnable() {
+
+            public void run() {
+                write();
+            }
+        }, "checkpoint-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * <p>Load a checkpoint to continue its run, writing further checkpoints to the same file.</p>
+     * @param file
+     * @param interval Generations between checkpoints
+     * @return
+     * @throws IOException
+     */
+    static Checkpointer resume(File file, int interval) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a checkpoint: " + file);
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Expected checkpoint version " + VERSION + ", instead found: " + version);
+        }
+        boolean distanceMatrix = in.readBoolean();
+        SalesmanMap map = MigrationProtocol.readMap(in);
+        if (distanceMatrix) {
+            map.precomputeDistances();
+        }
+        GeneticAlgorithmConfig config = MigrationProtocol.readConfig(in);
+        int geneticTrials = in.readInt();
+        int randomTrials = in.readInt();
+        byte[] seedGenerator = readBytes(in);
+        double[] results = new double[geneticTrials];
+        int finishedTrials = in.readInt();
+        for (int trial = 0; trial < finishedTrials; trial++) {
+            results[trial] = in.readDouble();
+        }
+
+        Checkpointer checkpointer = new Checkpointer(file, interval, map, config, geneticTrials, randomTrials, seedGenerator, results);
+        checkpointer.finishedTrials = finishedTrials;
+        if (in.readBoolean()) {
+            Snapshot snapshot = new Snapshot();
+            snapshot.trial = in.readInt();
+            snapshot.generation = in.readInt();
+            snapshot.generator = readBytes(in);
+            int populationSize = in.readInt();
+            int numSites = map.getNumSites();
+            snapshot.tours = new int[populationSize * numSites];
+            snapshot.fitness = new double[populationSize];
+            for (int index = 0; index < populationSize; index++) {
+                snapshot.fitness[index] = in.readDouble();
+                if (in.readInt() != numSites) {
+                    throw new IOException("Checkpoint has an itinerary of the wrong length");
+                }
+                MigrationProtocol.readSites(in, snapshot.tours, index * numSites, numSites);
+            }
+            checkpointer.resumeSnapshot = snapshot;
+        }
+        return checkpointer;
+    }
+
+    SalesmanMap getMap() {
+        return map;
+    }
+
+    GeneticAlgorithmConfig getConfig() {
+        return config;
+    }
+
+    int getGeneticTrials() {
+        return geneticTrials;
+    }
+
+    int getRandomTrials() {
+        return randomTrials;
+    }
+
+    int getInterval() {
+        return interval;
+    }
+
+    /**
+     *
+     * @return The generator that seeds the trials, as it was before seeding any
+     */
+    Rng getSeedGenerator() {
+        return loadGenerator(seedGenerator);
+    }
+
+    /**
+     *
+     * @param trial Starting at 1
+     * @return True if the trial finished before the checkpoint
+     */
+    synchronized boolean isTrialFinished(int trial) {
+        return trial <= finishedTrials;
+    }
+
+    /**
+     *
+     * @param trial Starting at 1
+     * @return Shortest distance found by a finished trial
+     */
+    synchronized double getResult(int trial) {
+        return results[trial - 1];
+    }
+
+    /**
+     *
+     * @param trial Starting at 1
+     * @param random The trial's generator
+     * @return The generator as it was at the checkpoint if the trial was in progress, otherwise random
+     */
+    Rng getGenerator(int trial, Rng random) {
+        if (resumeSnapshot != null && resumeSnapshot.trial == trial) {
+            return loadGenerator(resumeSnapshot.generator);
+        }
+        return random;
+    }
+
+    /**
+     * <p>Make the algorithm save checkpoints, and if its trial was in progress, continue from the checkpoint.</p>
+     * @param algorithm Created with the generator from getGenerator
+     * @param trial Starting at 1
+     */
+    void attach(GeneticAlgorithm algorithm, int trial) {
+        algorithm.setCheckpointer(this, trial);
+        if (resumeSnapshot != null && resumeSnapshot.trial == trial) {
+            algorithm.resume(resumeSnapshot.generation, resumeSnapshot.tours, resumeSnapshot.fitness);
+            resumeSnapshot = null;
+        }
+    }
+
+    /**
+     * <p>Save the state at the start of a generation, unless the last two checkpoints are still being written.</p>
+     * @param trial Starting at 1
+     * @param generation
+     * @param population
+     * @param random The trial's generator
+     */
+    void saveGeneration(int trial, int generation, Population population, Rng random) {
+        Snapshot snapshot = free.poll();
+        if (snapshot == null) {
+            return;
+        }
+        int size = population.size() * population.getNumSites();
+        if (snapshot.tours == null || snapshot.tours.length != size) {
+            snapshot.tours = new int[size];
+            snapshot.fitness = new double[population.size()];
+        }
+        System.arraycopy(population.getTours(), 0, snapshot.tours, 0, size);
+        for (int index = 0; index < population.size(); index++) {
+            snapshot.fitness[index] = population.getFitness(index);
+        }
+        snapshot.trial = trial;
+        snapshot.generation = generation;
+        snapshot.generator = saveGenerator(random);
+        synchronized (this) {
+            snapshot.finishedTrials = finishedTrials;
+        }
+        pending.add(snapshot);
+    }
+
+    /**
+     * <p>Record the result of a trial, and save a checkpoint with no trial in progress.</p>
+     * @param trial Starting at 1
+     * @param distance
+     * @throws InterruptedException
+     */
+    void trialFinished(int trial, double distance) throws InterruptedException {
+        Snapshot snapshot = free.take();
+        synchronized (this) {
+            results[trial - 1] = distance;
+            finishedTrials = Math.max(finishedTrials, trial);
+            snapshot.finishedTrials = finishedTrials;
+        }
+        snapshot.trial = 0;
+        pending.add(snapshot);
+    }
+
+    /**
+     * <p>Wait for every checkpoint to be written, then stop the writer thread.</p>
+     * @throws IOException If any checkpoint couldn't be written
+     */
+    public void close() throws IOException {
+        Snapshot marker = new Snapshot();
+        marker.isClose = true;
+        pending.add(marker);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while writing checkpoint", e);
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * <p>Writer thread.</p>
+     */
+    private void write() {
+        try {
+            while (true) {
+                Snapshot snapshot = pending.take();
+                if (snapshot.isClose) {
+                    return;
+                }
+                try {
+                    encode(snapshot);
+                    writeFile();
+                } catch (IOException e) {
+                    // Keep running; reported on close
+                    error = e;
+                }
+                free.add(snapshot);
+            }
+        } catch (InterruptedException e) {
+            // Daemon thread, so only interrupted when the JVM is exiting
+        }
+    }
+
+    private void encode(Snapshot snapshot) throws IOException {
+        buffer.reset();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeBoolean(map.hasDistanceMatrix());
+        MigrationProtocol.writeMap(out, map);
+        MigrationProtocol.writeConfig(out, config);
+        out.writeInt(geneticTrials);
+        out.writeInt(randomTrials);
+        writeBytes(seedGenerator);
+        out.writeInt(snapshot.finishedTrials);
+        synchronized (this) {
+            for (int trial = 0; trial < snapshot.finishedTrials; trial++) {
+                out.writeDouble(results[trial]);
+            }
+        }
+
+        out.writeBoolean(snapshot.trial != 0);
+        if (snapshot.trial != 0) {
+            final int numSites = map.getNumSites();
+            out.writeInt(snapshot.trial);
+            out.writeInt(snapshot.generation);
+            writeBytes(snapshot.generator);
+            out.writeInt(snapshot.fitness.length);
+            for (int index = 0; index < snapshot.fitness.length; index++) {
+                out.writeDouble(snapshot.fitness[index]);
+                MigrationProtocol.writeSites(out, snapshot.tours, index * numSites, numSites);
+            }
+        }
+        out.flush();
+    }
+
+    private void writeFile() throws IOException {
+        Path target = file.toPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer bytes = buffer.toByteBuffer();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     *
+     * @param random
+     * @return The state of the generator, so it can carry on from the same point
+     */
+    private static byte[] saveGenerator(Rng random) {
+        ByteBuffer bytes = ByteBuffer.allocate(4 * 8);
+        for (long word : random.getState()) {
+            bytes.putLong(word);
+        }
+        return bytes.array();
+    }
+
+    private static Rng loadGenerator(byte[] state) {
+        if (state.length != 4 * 8) {
+            throw new RuntimeException("Couldn't load random number generator from checkpoint: expected 32 bytes of state, instead found " + state.length);
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(state);
+        return new Rng(new long[]{bytes.getLong(), bytes.getLong(), bytes.getLong(), bytes.getLong()});
+    }
+}
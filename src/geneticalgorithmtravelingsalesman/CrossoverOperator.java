@@ -0,0 +1,289 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.util.Arrays;
+
+/**
+ * <p>Ways to combine two parent itineraries into a child.</p>
+ * <p>Except for UNIFORM, each operator always produces a valid itinerary (every site exactly once), so the child never needs repairing. For those, the cross-over rate is the chance the parents are crossed at all; otherwise the child is a copy of the first parent.</p>
+ * <p>Parents are read straight out of a flat array of itineraries, and all scratch space comes from the breeder, so nothing is allocated.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+public enum CrossoverOperator {
+
+    /**
+     * <p>Original operator: copy from one parent, switching parents at each site with chance of the cross-over rate. Duplicated sites are then repaired.</p>
+     */
+    UNIFORM {
+
+        @Override()
+        boolean crossover(int[] tours, int parent1, int parent2, int[] child, Breeder breeder) {
+            cross(tours, parent1, parent2, child, breeder);
+            return true;
+        }
+
+        void cross(int[] tours, int parent1, int parent2, int[] child, Breeder breeder) {
+            final Rng random = breeder.getRandom();
+            final double crossOverRate = breeder.getConfig().getCrossOverRate();
+
+            // Pick a parent randomly
+            boolean isParent1 = random.nextBoolean();
+
+            // Start encoding from both parents
+            for (int index = 0; index < child.length; index++) {
+
+                if (isParent1) {
+                    child[index] = tours[parent1 + index];
+                } else {
+                    child[index] = tours[parent2 + index];
+                }
+
+                // By chance, crossover
+                if (random.nextFloat() < crossOverRate) {
+                    isParent1 = !isParent1;
+                }
+            }
+
+            breeder.checkArrayForIntegrity(child);
+        }
+    },
+    /**
+     * <p>Order crossover (OX): copy a random segment from the first parent, then fill the rest in the order the sites appear in the second parent, starting after the segment.</p>
+     */
+    OX {
+
+        void cross(int[] tours, int parent1, int parent2, int[] child, Breeder breeder) {
+            final int length = child.length;
+            final int[] used = breeder.marks;
+            Arrays.fill(used, 0);
+
+            int start = breeder.getRandom().nextInt(length);
+            int end = breeder.getRandom().nextInt(length);
+            if (start > end) {
+                int temp = start;
+                start = end;
+                end = temp;
+            }
+
+            for (int index = start; index <= end; index++) {
+                child[index] = tours[parent1 + index];
+                used[child[index]] = 1;
+            }
+
+            int dest = (end + 1) % length;
+            for (int i = 1; i <= length; i++) {
+                int site = tours[parent2 + (end + i) % length];
+                if (used[site] == 0) {
+                    child[dest] = site;
+                    dest = (dest + 1) % length;
+                }
+            }
+        }
+    },
+    /**
+     * <p>Partially mapped crossover (PMX): copy a random segment from the first parent, place the second parent's sites from that segment using the mapping between the parents, and copy the rest from the second parent.</p>
+     */
+    PMX {
+
+        void cross(int[] tours, int parent1, int parent2, int[] child, Breeder breeder) {
+            final int length = child.length;
+            final int[] inSegment = breeder.marks;
+            final int[] positionInParent2 = breeder.parentPosition;
+            Arrays.fill(inSegment, 0);
+            Arrays.fill(child, -1);
+
+            for (int index = 0; index < length; index++) {
+                positionInParent2[tours[parent2 + index]] = index;
+            }
+
+            int start = breeder.getRandom().nextInt(length);
+            int end = breeder.getRandom().nextInt(length);
+            if (start > end) {
+                int temp = start;
+                start = end;
+                end = temp;
+            }
+
+            for (int index = start; index <= end; index++) {
+                child[index] = tours[parent1 + index];
+                inSegment[child[index]] = 1;
+            }
+
+            // Sites in second parent's segment that weren't copied follow the mapping out of the segment
+            for (int index = start; index <= end; index++) {
+                int site = tours[parent2 + index];
+                if (inSegment[site] == 0) {
+                    int dest = index;
+                    do {
+                        dest = positionInParent2[tours[parent1 + dest]];
+                    } while (dest >= start && dest <= end);
+                    child[dest] = site;
+                }
+            }
+
+            for (int index = 0; index < length; index++) {
+                if (child[index] == -1) {
+                    child[index] = tours[parent2 + index];
+                }
+            }
+        }
+    },
+    /**
+     * <p>Edge recombination crossover (ERX): build the child from the edges of both parents, always moving to the neighbor that has the fewest remaining neighbors. Starts where the first parent starts.</p>
+     */
+    ERX {
+
+        void cross(int[] tours, int parent1, int parent2, int[] child, Breeder breeder) {
+            final int length = child.length;
+            final Rng random = breeder.getRandom();
+            // Up to four neighbors per site: two from each parent
+            final int[] neighbors = breeder.neighbors;
+            final int[] neighborCounts = breeder.neighborCounts;
+            final int[] visited = breeder.marks;
+            // Sites not yet visited, with swap-removal, so can pick one at random in constant time
+            final int[] unvisited = breeder.unvisited;
+            final int[] unvisitedIndex = breeder.parentPosition;
+            Arrays.fill(neighborCounts, 0);
+            Arrays.fill(visited, 0);
+
+            for (int index = 0; index < length - 1; index++) {
+                addEdge(neighbors, neighborCounts, tours[parent1 + index], tours[parent1 + index + 1]);
+                addEdge(neighbors, neighborCounts, tours[parent2 + index], tours[parent2 + index + 1]);
+            }
+            for (int site = 0; site < length; site++) {
+                unvisited[site] = site;
+                unvisitedIndex[site] = site;
+            }
+            int numUnvisited = length;
+
+            int site = tours[parent1];
+            for (int index = 0; index < length; index++) {
+                child[index] = site;
+                visited[site] = 1;
+
+                // Remove from unvisited
+                int last = unvisited[--numUnvisited];
+                unvisited[unvisitedIndex[site]] = last;
+                unvisitedIndex[last] = unvisitedIndex[site];
+
+                if (numUnvisited == 0) {
+                    break;
+                }
+
+                // Next is the unvisited neighbor with fewest unvisited neighbors, breaking ties randomly
+                int nextSite = -1;
+                int fewest = Integer.MAX_VALUE;
+                int ties = 0;
+                for (int n = 0; n < neighborCounts[site]; n++) {
+                    int neighbor = neighbors[site * 4 + n];
+                    if (visited[neighbor] != 0) {
+                        continue;
+                    }
+                    int remaining = 0;
+                    for (int m = 0; m < neighborCounts[neighbor]; m++) {
+                        if (visited[neighbors[neighbor * 4 + m]] == 0) {
+                            remaining++;
+                        }
+                    }
+                    if (remaining < fewest) {
+                        fewest = remaining;
+                        nextSite = neighbor;
+                        ties = 1;
+                    } else if (remaining == fewest && random.nextInt(++ties) == 0) {
+                        nextSite = neighbor;
+                    }
+                }
+
+                // Dead end, so pick any unvisited site
+                if (nextSite == -1) {
+                    nextSite = unvisited[random.nextInt(numUnvisited)];
+                }
+                site = nextSite;
+            }
+        }
+
+        private void addEdge(int[] neighbors, int[] neighborCounts, int site1, int site2) {
+            addNeighbor(neighbors, neighborCounts, site1, site2);
+            addNeighbor(neighbors, neighborCounts, site2, site1);
+        }
+
+        private void addNeighbor(int[] neighbors, int[] neighborCounts, int site, int neighbor) {
+            // Edges shared by both parents are only listed once
+            for (int n = 0; n < neighborCounts[site]; n++) {
+                if (neighbors[site * 4 + n] == neighbor) {
+                    return;
+                }
+            }
+            neighbors[site * 4 + neighborCounts[site]++] = neighbor;
+        }
+    },
+    /**
+     * <p>Cycle crossover (CX): split the positions into cycles between the parents, then take alternate cycles from each parent, so every site keeps the position it had in one of the parents.</p>
+     */
+    CYCLE {
+
+        void cross(int[] tours, int parent1, int parent2, int[] child, Breeder breeder) {
+            final int length = child.length;
+            final int[] positionInParent1 = breeder.parentPosition;
+            final int[] assigned = breeder.marks;
+            Arrays.fill(assigned, 0);
+
+            for (int index = 0; index < length; index++) {
+                positionInParent1[tours[parent1 + index]] = index;
+            }
+
+            boolean isParent1 = breeder.getRandom().nextBoolean();
+            for (int start = 0; start < length; start++) {
+                if (assigned[start] != 0) {
+                    continue;
+                }
+                int index = start;
+                do {
+                    child[index] = isParent1 ? tours[parent1 + index] : tours[parent2 + index];
+                    assigned[index] = 1;
+                    index = positionInParent1[tours[parent2 + index]];
+                } while (index != start);
+                isParent1 = !isParent1;
+            }
+        }
+    };
+
+    /**
+     * <p>Cross the parents with chance of the cross-over rate, otherwise copy the first parent.</p>
+     * @param tours Flat array holding both parents
+     * @param parent1 Offset of first parent in tours
+     * @param parent2 Offset of second parent in tours
+     * @param child Overwritten with the child
+     * @param breeder Supplies the random number generator and scratch space
+     * @return False if the child is just a copy of the first parent
+     */
+    boolean crossover(int[] tours, int parent1, int parent2, int[] child, Breeder breeder) {
+        if (breeder.getRandom().nextDouble() < breeder.getConfig().getCrossOverRate()) {
+            cross(tours, parent1, parent2, child, breeder);
+            return true;
+        }
+        System.arraycopy(tours, parent1, child, 0, child.length);
+        return false;
+    }
+
+    /**
+     * <p>Always cross the parents.</p>
+     */
+    abstract void cross(int[] tours, int parent1, int parent2, int[] child, Breeder breeder);
+
+    /**
+     * 
+     * @param name Case-insensitive
+     * @return
+     */
+    static CrossoverOperator parse(String name) {
+        try {
+            return valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown crossover operator: " + name);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+/**
+ * <p>How the distance between two sites is calculated from their coordinates. Apart from EUCLIDEAN, these are the TSPLIB edge weight types, rounded the way TSPLIB rounds them so tour lengths match published optima.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+public enum DistanceMetric {
+
+    /**
+     * <p>Straight-line distance, not rounded. Used by generated maps.</p>
+     */
+    EUCLIDEAN {
+
+        double distance(double x1, double y1, double x2, double y2) {
+            double dx = x2 - x1;
+            double dy = y2 - y1;
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+    },
+    /**
+     * <p>Straight-line distance rounded to the nearest integer.</p>
+     */
+    EUC_2D {
+
+        double distance(double x1, double y1, double x2, double y2) {
+            double dx = x2 - x1;
+            double dy = y2 - y1;
+            return Math.floor(Math.sqrt(dx * dx + dy * dy) + 0.5);
+        }
+    },
+    /**
+     * <p>Straight-line distance rounded up.</p>
+     */
+    CEIL_2D {
+
+        double distance(double x1, double y1, double x2, double y2) {
+            double dx = x2 - x1;
+            double dy = y2 - y1;
+            return Math.ceil(Math.sqrt(dx * dx + dy * dy));
+        }
+    },
+    /**
+     * <p>Pseudo-Euclidean distance of the att48 and att532 instances.</p>
+     */
+    ATT {
+
+        double distance(double x1, double y1, double x2, double y2) {
+            double dx = x2 - x1;
+            double dy = y2 - y1;
+            double r = Math.sqrt((dx * dx + dy * dy) / 10.0);
+            double t = Math.floor(r + 0.5);
+            return t < r ? t + 1 : t;
+        }
+    },
+    /**
+     * <p>Great circle distance in kilometers. Coordinates are latitude (x) and longitude (y) in radians, as converted by toGeoRadians.</p>
+     */
+    GEO {
+
+        double distance(double x1, double y1, double x2, double y2) {
+            double q1 = Math.cos(y1 - y2);
+            double q2 = Math.cos(x1 - x2);
+            double q3 = Math.cos(x1 + x2);
+            return (int) (EARTH_RADIUS * Math.acos(0.5 * ((1.0 + q1) * q2 - (1.0 - q1) * q3)) + 1.0);
+        }
+    },
+    /**
+     * <p>Distances are given as a matrix rather than calculated.</p>
+     */
+    EXPLICIT {
+
+        double distance(double x1, double y1, double x2, double y2) {
+            throw new RuntimeException("ASSERTION FAILED: explicit distances come from the distance matrix, not coordinates");
+        }
+    };
+    // Radius TSPLIB uses for the earth, in kilometers
+    private static final double EARTH_RADIUS = 6378.388;
+
+    /**
+     *
+     * @param x1
+     * @param y1
+     * @param x2
+     * @param y2
+     * @return
+     */
+    abstract double distance(double x1, double y1, double x2, double y2);
+
+    /**
+     * <p>Whether distance never decreases as the straight-line distance grows, so nearest neighbors can be found from the coordinates.</p>
+     * @return
+     */
+    boolean isMonotoneEuclidean() {
+        return this != GEO && this != EXPLICIT;
+    }
+
+    /**
+     * <p>TSPLIB GEO coordinates are DDD.MM (degrees and minutes). The degrees are truncated, as in TSPLIB's reference code.</p>
+     * @param coordinate
+     * @return Radians
+     */
+    static double toGeoRadians(double coordinate) {
+        final double pi = 3.141592;
+        int degrees = (int) coordinate;
+        double minutes = coordinate - degrees;
+        return pi * (degrees + 5.0 * minutes / 3.0) / 180.0;
+    }
+
+    /**
+     *
+     * @param name Case-insensitive
+     * @return
+     */
+    static DistanceMetric parse(String name) {
+        try {
+            return valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown distance metric: " + name);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+/**
+ * <p>What the genetic algorithm does when too few of its itineraries are different, so breeding mostly copies the same few.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+public enum DiversityResponse {
+
+    /**
+     * <p>Replace every itinerary but the best with a random one.</p>
+     */
+    RESTART,
+    /**
+     * <p>Double the mutation rate each generation while diversity is low, and halve it back toward the configured rate once it recovers.</p>
+     */
+    MUTATE;
+
+    /**
+     * 
+     * @param name Case-insensitive
+     * @return
+     */
+    static DiversityResponse parse(String name) {
+        try {
+            return valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown diversity response: " + name);
+        }
+    }
+}
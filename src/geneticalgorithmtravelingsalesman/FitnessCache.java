@@ -0,0 +1,176 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+/**
+ * <p>Total travel of recently scored itineraries, so a child that is a copy of one costs a hash of its sites instead of a distance per site.</p>
+ * <p>Keyed by a 64-bit hash of the sites in order, without keeping the sites themselves, so two itineraries with the same hash would share a distance. A lookup compares with at most BUCKET_SIZE keys, which already share the bits that picked the bucket, so even the largest cache matches a different itinerary less than once in ten billion lookups. Practically, then, the cache never changes a result. To keep it that way, an itinerary only matches itself, not its reverse or (for closed tours) a rotation: those have the same total travel, but summed in a different order it can differ in the last bit.</p>
+ * <p>Open addressing in buckets of BUCKET_SIZE slots, in primitive arrays allocated once. A full bucket evicts with the clock (second chance) algorithm, so itineraries that keep turning up stay while one-off children go first. Not thread safe: each breeder has its own.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+final class FitnessCache {
+
+    static final int BUCKET_SIZE = 8;
+    // Lookups stop for SKIP children when fewer than WINDOW / MIN_HIT_FRACTION of the last WINDOW hit, as on larger maps where nearly every child is new
+    static final int WINDOW = 256;
+    static final int MIN_HIT_FRACTION = 16;
+    static final int SKIP = 4096;
+    private static final long MULTIPLIER = 0x9e3779b97f4a7c15L;
+    // 0 is an empty slot
+    private final long[] keys;
+    private final double[] distances;
+    private final boolean[] isReferenced;
+    // Next slot each bucket's clock considers evicting
+    private final byte[] hands;
+    private final int bucketMask;
+    private long hits = 0;
+    private long misses = 0;
+    private int windowLookups = 0;
+    private int windowHits = 0;
+    private int skipping = 0;
+
+    /**
+     *
+     * @param capacity Itineraries to keep. Rounded up to a power of two, at least BUCKET_SIZE.
+     */
+    FitnessCache(int capacity) {
+        int buckets = 1;
+        while (buckets * BUCKET_SIZE < capacity && buckets < (1 << 26)) {
+            buckets <<= 1;
+        }
+        this.keys = new long[buckets * BUCKET_SIZE];
+        this.distances = new double[keys.length];
+        this.isReferenced = new boolean[keys.length];
+        this.hands = new byte[buckets];
+        this.bucketMask = buckets - 1;
+    }
+
+    /**
+     * <p>Rolling hash of the sites in order, one multiply per site. Sites are hashed in four interleaved lanes, so each multiply doesn't wait for the one before, then the lanes are mixed together.</p>
+     * @param itinerary
+     * @return Never 0
+     */
+    static long hash(int[] itinerary) {
+        long lane0 = itinerary.length;
+        long lane1 = 1;
+        long lane2 = 2;
+        long lane3 = 3;
+        int index = 0;
+        for (; index + 3 < itinerary.length; index += 4) {
+            lane0 = (lane0 ^ itinerary[index]) * MULTIPLIER;
+            lane1 = (lane1 ^ itinerary[index + 1]) * MULTIPLIER;
+            lane2 = (lane2 ^ itinerary[index + 2]) * MULTIPLIER;
+            lane3 = (lane3 ^ itinerary[index + 3]) * MULTIPLIER;
+        }
+        for (; index < itinerary.length; index++) {
+            lane0 = (lane0 ^ itinerary[index]) * MULTIPLIER;
+        }
+        long hash = Rng.mix(Rng.mix(Rng.mix(lane0) ^ lane1) ^ lane2) ^ lane3;
+        hash = Rng.mix(hash);
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * 
+     * @return False while lookups are skipped because they've been missing
+     */
+    boolean isWorthLooking() {
+        if (skipping > 0) {
+            skipping--;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @param key From hash
+     * @return Total travel of the itinerary, or NaN if it isn't cached
+     */
+    double get(long key) {
+        int slot = getBucket(key);
+        SLOTS:
+        for (int end = slot + BUCKET_SIZE; slot < end; slot++) {
+            if (keys[slot] == key) {
+                isReferenced[slot] = true;
+                hits++;
+                windowHits++;
+                countLookup();
+                return distances[slot];
+            } else if (keys[slot] == 0) {
+                // Slots fill in order and are never emptied, so the rest are empty too
+                break SLOTS;
+            }
+        }
+        misses++;
+        countLookup();
+        return Double.NaN;
+    }
+
+    /**
+     * <p>Call only after get returned NaN for the key.</p>
+     * @param key From hash
+     * @param distance
+     */
+    void put(long key, double distance) {
+        final int bucket = getBucket(key);
+        int slot = bucket;
+        SLOTS:
+        for (int end = bucket + BUCKET_SIZE; slot < end; slot++) {
+            if (keys[slot] == 0) {
+                break SLOTS;
+            }
+        }
+        if (slot == bucket + BUCKET_SIZE) {
+            // Full, so sweep the clock past slots used since it last passed, clearing them, and evict the first that wasn't
+            int hand = hands[bucket / BUCKET_SIZE];
+            while (isReferenced[bucket + hand]) {
+                isReferenced[bucket + hand] = false;
+                hand = (hand + 1) & (BUCKET_SIZE - 1);
+            }
+            slot = bucket + hand;
+            hands[bucket / BUCKET_SIZE] = (byte) ((hand + 1) & (BUCKET_SIZE - 1));
+        }
+        keys[slot] = key;
+        distances[slot] = distance;
+        isReferenced[slot] = false;
+    }
+
+    /**
+     *
+     * @return Lookups that found the itinerary, since the last call to clearCounts
+     */
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+
+    void clearCounts() {
+        hits = 0;
+        misses = 0;
+    }
+
+    private void countLookup() {
+        if (++windowLookups == WINDOW) {
+            if (windowHits * MIN_HIT_FRACTION < WINDOW) {
+                skipping = SKIP;
+            }
+            windowLookups = 0;
+            windowHits = 0;
+        }
+    }
+
+    /**
+     *
+     * @param key
+     * @return First slot of the key's bucket
+     */
+    private int getBucket(long key) {
+        return ((int) (key >>> 32) & bucketMask) * BUCKET_SIZE;
+    }
+}
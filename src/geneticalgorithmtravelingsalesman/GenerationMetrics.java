@@ -0,0 +1,159 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+/**
+ * <p>Metrics for one generation of one run: fitness of the population, its diversity (as of the last generation it was measured in), and where the time went. One instance is reused for every generation of a run, so listeners must copy anything they keep.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class GenerationMetrics {
+
+    private final String run;
+    private int generation;
+    private double bestDistance;
+    private double meanDistance;
+    private double worstDistance;
+    private int uniqueTours;
+    private double meanEdgeDistance;
+    private int diversityGeneration = -1;
+    private long generationNanos;
+    private final PhaseTimes phaseTimes = new PhaseTimes();
+    // Scratch for measuring diversity
+    private final int[] successor;
+    private final int[] predecessor;
+    private final LongHashSet tourHashes;
+
+    /**
+     * 
+     * @param run Identifies the run in output, e.g. "trial 3"
+     * @param populationSize
+     * @param numSites
+     */
+    GenerationMetrics(String run, int populationSize, int numSites) {
+        this.run = run;
+        this.successor = new int[numSites];
+        this.predecessor = new int[numSites];
+        this.tourHashes = new LongHashSet(populationSize);
+    }
+
+    /**
+     * <p>Clear the times from the previous generation.</p>
+     * @param generation
+     */
+    void start(int generation) {
+        this.generation = generation;
+        this.phaseTimes.clear();
+        this.generationNanos = 0;
+    }
+
+    void setGenerationNanos(long generationNanos) {
+        this.generationNanos = generationNanos;
+    }
+
+    /**
+     * <p>Record the fitness and, if asked, the diversity of a ranked population. Diversity is the number of distinct itineraries, and the mean fraction of each itinerary's edges that are not in the best itinerary. Fitness takes time proportional to the population size, but diversity takes about as long as scoring the population once.</p>
+     * @param population
+     * @param measureDiversity False to keep the diversity last measured
+     */
+    void measurePopulation(Population population, boolean measureDiversity) {
+        final int size = population.size();
+        final int numSites = population.getNumSites();
+        final int[] tours = population.getTours();
+
+        bestDistance = population.getFitness(population.getRanked(0));
+        worstDistance = population.getFitness(population.getRanked(size - 1));
+        double total = 0;
+        for (int index = 0; index < size; index++) {
+            total += population.getFitness(index);
+        }
+        meanDistance = total / size;
+        if (!measureDiversity) {
+            return;
+        }
+
+        // Edges of the best itinerary. Itineraries are open paths, so the ends have no predecessor or successor.
+        int bestOffset = population.getOffset(population.getRanked(0));
+        for (int index = 0; index < numSites; index++) {
+            int site = tours[bestOffset + index];
+            successor[site] = index + 1 < numSites ? tours[bestOffset + index + 1] : -1;
+            predecessor[site] = index > 0 ? tours[bestOffset + index - 1] : -1;
+        }
+
+        double totalEdgeDistance = 0;
+        for (int individual = 0; individual < size; individual++) {
+            int offset = population.getOffset(individual);
+            int sharedEdges = 0;
+            for (int index = 0; index + 1 < numSites; index++) {
+                int site = tours[offset + index];
+                int nextSite = tours[offset + index + 1];
+                if (successor[site] == nextSite || predecessor[site] == nextSite) {
+                    sharedEdges++;
+                }
+            }
+            if (numSites > 1) {
+                totalEdgeDistance += 1.0 - (double) sharedEdges / (numSites - 1);
+            }
+        }
+        uniqueTours = population.countUniqueTours(tourHashes);
+        meanEdgeDistance = totalEdgeDistance / size;
+        diversityGeneration = generation;
+    }
+
+    String getRun() {
+        return run;
+    }
+
+    int getGeneration() {
+        return generation;
+    }
+
+    double getBestDistance() {
+        return bestDistance;
+    }
+
+    double getMeanDistance() {
+        return meanDistance;
+    }
+
+    double getWorstDistance() {
+        return worstDistance;
+    }
+
+    int getUniqueTours() {
+        return uniqueTours;
+    }
+
+    /**
+     * 
+     * @return From 0, when every itinerary has the same edges as the best, to 1
+     */
+    double getMeanEdgeDistance() {
+        return meanEdgeDistance;
+    }
+
+    /**
+     * 
+     * @return Generation the diversity was last measured in, or -1 if it hasn't been yet
+     */
+    int getDiversityGeneration() {
+        return diversityGeneration;
+    }
+
+    /**
+     * 
+     * @return Wall time of the whole generation, including measuring these metrics
+     */
+    long getGenerationNanos() {
+        return generationNanos;
+    }
+
+    /**
+     * 
+     * @return Time in each phase, and bytes allocated by this run's threads during the generation
+     */
+    PhaseTimes getPhaseTimes() {
+        return phaseTimes;
+    }
+}
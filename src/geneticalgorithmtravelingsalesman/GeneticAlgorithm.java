@@ -0,0 +1,472 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>One run of the genetic algorithm on a map.</p>
+ * <p>Keeps two populations (current and next generation) and swaps them each generation, so after the first generation no itineraries are allocated.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class GeneticAlgorithm {
+
+    private final SalesmanMap map;
+    private final GeneticAlgorithmConfig config;
+    private final ExecutorService breedingPool;
+    private final Rng random;
+    private final PrintStream out;
+    private final Breeder[] breeders;
+    private final Selection selection;
+    private final List<Future<Object>> futures;
+    private Population current;
+    private Population next;
+    private final int[] bestSolution;
+    private double bestSolutionDistance = -1;
+    // Island model only
+    private MigrationChannel migrationChannel = null;
+    private String label = "";
+    // Null unless collecting metrics
+    private MetricsListener metricsListener = null;
+    private GenerationMetrics metrics = null;
+    private TraceWriter traceWriter = null;
+    // Null unless saving checkpoints
+    private Checkpointer checkpointer = null;
+    private int checkpointTrial;
+    // Set by resume
+    private int startGeneration = 0;
+    private boolean isResumed = false;
+    // Embedded solves only
+    private SolutionListener solutionListener = null;
+    private long queuedNanos;
+    private boolean isQueuedNanosSet = false;
+    private volatile boolean isStopRequested = false;
+    // Set by run
+    private int generationsRun = 0;
+    private String stopReason = null;
+    private int restarts = 0;
+    // Null unless config checks diversity
+    private final LongHashSet tourHashes;
+
+    /**
+     * 
+     * @param map
+     * @param config
+     * @param breedingPool Used to breed children concurrently when config has more than one worker. Null to breed on the calling thread.
+     * @param random
+     * @param out Where to print the best of each generation, if config asks for it
+     */
+    GeneticAlgorithm(SalesmanMap map, GeneticAlgorithmConfig config, ExecutorService breedingPool, Rng random, PrintStream out) {
+        this.map = map;
+        this.config = config;
+        this.random = random;
+        this.out = out;
+
+        int workers = breedingPool == null ? 1 : Math.max(1, config.getWorkers());
+        this.breedingPool = workers > 1 ? breedingPool : null;
+        this.breeders = new Breeder[workers];
+        if (workers == 1) {
+            breeders[0] = new Breeder(map, config, random);
+        } else {
+            // Reseeded from this run's generator every generation
+            for (int worker = 0; worker < workers; worker++) {
+                breeders[worker] = new Breeder(map, config, new Rng());
+            }
+        }
+        this.futures = new ArrayList<Future<Object>>(workers);
+        this.selection = new Selection(config);
+
+        this.current = new Population(config.getPopulationSize(), map.getNumSites());
+        this.next = new Population(config.getPopulationSize(), map.getNumSites());
+        this.bestSolution = new int[map.getNumSites()];
+        this.tourHashes = config.getDiversityThreshold() > 0 ? new LongHashSet(config.getPopulationSize()) : null;
+    }
+
+    /**
+     * 
+     * <p>Stops before the configured number of generations if the config sets a stagnation window, target distance or time limit and it is reached. See getStopReason.</p>
+     * @return The shortest distance in the final generation
+     * @throws Exception
+     */
+    double run() throws Exception {
+        final int populationSize = config.getPopulationSize();
+        final long startNanos = isQueuedNanosSet ? queuedNanos : System.nanoTime();
+        long initialNanos = System.nanoTime();
+        double shortestEver = Double.MAX_VALUE;
+        // Shortest ever, rescored in full, so stopping doesn't depend on rounding drift in incremental scores
+        double shortestEverRescored = Double.MAX_VALUE;
+        int lastImprovement = startGeneration;
+        generationsRun = config.getGenerations();
+        stopReason = null;
+
+        POPULATION:
+        for (int pop = 0; pop < populationSize && !isResumed; pop++) {
+            Itineraries.fillRandomItinerary(bestSolution, random);
+            current.set(pop, bestSolution, Itineraries.getTotalTravel(bestSolution, map));
+        }
+        initialNanos = System.nanoTime() - initialNanos;
+
+        GENERATIONS:
+        for (int gen = startGeneration; gen < config.getGenerations(); gen++) {
+            if (checkpointer != null && gen > startGeneration && gen % checkpointer.getInterval() == 0) {
+                checkpointer.saveGeneration(checkpointTrial, gen, current, random);
+            }
+
+            long generationStart = 0;
+            long allocated = 0;
+            long lap = 0;
+            if (metrics != null) {
+                metrics.start(gen);
+                if (gen == 0) {
+                    // Scoring the first population
+                    metrics.getPhaseTimes().nanos[PhaseTimes.EVALUATION] += initialNanos;
+                }
+                allocated = PhaseTimes.getAllocatedBytes();
+                generationStart = lap = System.nanoTime();
+            }
+
+            // STEP 1: Get the fitest together
+            current.rank();
+            if (metrics != null) {
+                lap = metrics.getPhaseTimes().lap(PhaseTimes.SELECTION, lap);
+            }
+
+            // Island model: swap best with other islands, then rank again
+            if (migrationChannel != null && gen > 0 && gen % config.getMigrationInterval() == 0) {
+                if (migrate()) {
+                    current.rank();
+                }
+            }
+
+            if (tourHashes != null) {
+                respondToDiversity();
+            }
+
+            // Each generation, reset the best!
+            int best = current.getRanked(0);
+            current.copyTour(best, bestSolution);
+            bestSolutionDistance = current.getFitness(best);
+
+            // Memetic: polish the best before it mates. It only gets shorter, so it is still ranked first.
+            if (config.getLocalSearch() == LocalSearchMode.ELITES) {
+                if (metrics != null) {
+                    lap = System.nanoTime();
+                }
+                double gain = breeders[0].getLocalSearch().improve(bestSolution);
+                if (gain > 0) {
+                    bestSolutionDistance -= gain;
+                    current.set(best, bestSolution, bestSolutionDistance);
+                }
+                if (metrics != null) {
+                    metrics.getPhaseTimes().lap(PhaseTimes.LOCAL_SEARCH, lap);
+                }
+            }
+            if (config.isPrintBestOfEachGeneration()) {
+                if (traceWriter != null) {
+                    traceWriter.traceBest(out, label, gen, bestSolution, bestSolutionDistance);
+                } else {
+                    StringBuilder line = new StringBuilder();
+                    TraceWriter.formatBest(line, label, gen, bestSolution, bestSolutionDistance);
+                    out.println(line);
+                }
+            }
+
+            if (bestSolutionDistance < shortestEver) {
+                shortestEver = bestSolutionDistance;
+                double rescored = Itineraries.getTotalTravel(bestSolution, map);
+                if (rescored < shortestEverRescored) {
+                    shortestEverRescored = rescored;
+                    lastImprovement = gen;
+                    if (solutionListener != null) {
+                        solutionListener.improved(new Solution(bestSolution.clone(), rescored, gen));
+                    }
+                }
+            }
+            if (config.getTargetDistance() > 0 && shortestEverRescored <= config.getTargetDistance()) {
+                stopReason = "reached target distance of " + config.getTargetDistance();
+            } else if (isStopRequested) {
+                stopReason = "stopped on request";
+            } else if (config.getTimeLimitMillis() > 0 && System.nanoTime() - startNanos >= config.getTimeLimitMillis() * 1000000L) {
+                stopReason = "ran out of time after " + config.getTimeLimitMillis() + " ms";
+            } else if (config.getStagnationGenerations() > 0 && gen - lastImprovement >= config.getStagnationGenerations()) {
+                stopReason = "no improvement for " + config.getStagnationGenerations() + " generations";
+            }
+            if (stopReason != null) {
+                generationsRun = gen + 1;
+                break GENERATIONS;
+            }
+
+            // STEP 2: Mate to generate next population
+            int pop = 0;
+
+            // If using elitism, automatically put best solution from previous generation in next
+            if (config.isElitism()) {
+                pop = 1;
+                next.copy(0, current, best);
+            }
+
+            if (metrics != null) {
+                lap = System.nanoTime();
+            }
+            selection.prepare(random);
+            if (metrics != null) {
+                metrics.getPhaseTimes().lap(PhaseTimes.SELECTION, lap);
+            }
+            breedChildren(pop, populationSize);
+
+            if (metrics != null) {
+                for (Breeder breeder : breeders) {
+                    metrics.getPhaseTimes().addScaled(breeder.getPhaseTimes());
+                }
+                lap = System.nanoTime();
+                metrics.measurePopulation(current, gen % config.getMetricsDiversityInterval() == 0);
+                long now = metrics.getPhaseTimes().lap(PhaseTimes.METRICS, lap);
+                metrics.getPhaseTimes().allocatedBytes += PhaseTimes.getAllocatedBytes() - allocated;
+                metrics.setGenerationNanos(now - generationStart);
+                metricsListener.generationFinished(metrics);
+            }
+
+            Population temp = current;
+            current = next;
+            next = temp;
+        }
+
+        // Distances of mutated copies are updated incrementally, so rescore the best to remove any rounding drift
+        if (bestSolutionDistance != -1) {
+            bestSolutionDistance = Itineraries.getTotalTravel(bestSolution, map);
+        }
+
+        return bestSolutionDistance;
+    }
+
+    /**
+     * <p>If too few of the ranked population's itineraries are different, respond as the config asks: replace all but the best with random itineraries (and rank again), or raise the mutation rate. A raised rate is brought back down once diversity recovers.</p>
+     */
+    private void respondToDiversity() {
+        final int populationSize = current.size();
+        double diversity = (double) current.countUniqueTours(tourHashes) / populationSize;
+        if (diversity >= config.getDiversityThreshold()) {
+            for (Breeder breeder : breeders) {
+                breeder.setMutationRate(Math.max(config.getMutationRate(), breeder.getMutationRate() / 2));
+            }
+            return;
+        }
+
+        switch (config.getDiversityResponse()) {
+            case RESTART:
+                int best = current.getRanked(0);
+                RESTART:
+                for (int index = 0; index < populationSize; index++) {
+                    if (index == best) {
+                        continue RESTART;
+                    }
+                    Itineraries.fillRandomItinerary(bestSolution, random);
+                    current.set(index, bestSolution, Itineraries.getTotalTravel(bestSolution, map));
+                }
+                current.rank();
+                restarts++;
+                break;
+            case MUTATE:
+                // At least one mutation per child, but no more than every other site
+                double rate = Math.min(0.5, Math.max(breeders[0].getMutationRate() * 2, 1.0 / Math.max(1, map.getNumSites())));
+                for (Breeder breeder : breeders) {
+                    breeder.setMutationRate(rate);
+                }
+                break;
+            default:
+                throw new RuntimeException("ASSERTION FAILED: unknown diversity response: " + config.getDiversityResponse());
+        }
+    }
+
+    /**
+     * <p>Breed and score the children from index from to index to - 1 of the next generation. With more than one breeder, the children are split into one contiguous range per breeder and bred concurrently.</p>
+     * @param from
+     * @param to
+     * @throws Exception
+     */
+    private void breedChildren(int from, int to) throws Exception {
+        if (breedingPool == null) {
+            breeders[0].setWork(current, selection, next, from, to);
+            breeders[0].breed();
+            return;
+        }
+
+        futures.clear();
+        int count = to - from;
+        for (int worker = 0; worker < breeders.length; worker++) {
+            int workerFrom = from + (int) ((long) count * worker / breeders.length);
+            int workerTo = from + (int) ((long) count * (worker + 1) / breeders.length);
+            breeders[worker].getRandom().setSeed(random.nextLong());
+            breeders[worker].setWork(current, selection, next, workerFrom, workerTo);
+            futures.add(breedingPool.submit(breeders[worker]));
+        }
+
+        for (Future<Object> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * <p>Send copies of the best itineraries through the migration channel, then replace the worst with any that were received. The best itinerary is never replaced.</p>
+     * @return True if any itineraries were replaced
+     */
+    private boolean migrate() {
+        final int populationSize = current.size();
+        final int numSites = current.getNumSites();
+
+        for (int rank = 0; rank < Math.min(config.getMigrants(), populationSize); rank++) {
+            int index = current.getRanked(rank);
+            migrationChannel.emigrate(current.getTours(), current.getOffset(index), numSites, current.getFitness(index));
+        }
+
+        int replaced = 0;
+        Migrant migrant;
+        while ((migrant = migrationChannel.immigrate()) != null) {
+            if (replaced < populationSize - 1 && migrant.itinerary.length == numSites) {
+                current.set(current.getRanked(populationSize - 1 - replaced), migrant.itinerary, migrant.distance);
+                replaced++;
+            }
+        }
+        return replaced > 0;
+    }
+
+    /**
+     * 
+     * @param migrationChannel Makes this an island, which swaps its best itineraries with others every so many generations
+     */
+    void setMigrationChannel(MigrationChannel migrationChannel) {
+        this.migrationChannel = migrationChannel;
+    }
+
+    /**
+     * 
+     * @param metricsListener Receives the metrics of every generation. Null to not collect metrics.
+     * @param run Identifies this run in the metrics
+     */
+    void setMetricsListener(MetricsListener metricsListener, String run) {
+        this.metricsListener = metricsListener;
+        this.metrics = metricsListener == null ? null : new GenerationMetrics(run, config.getPopulationSize(), map.getNumSites());
+        for (Breeder breeder : breeders) {
+            breeder.setPhaseTimes(metricsListener == null ? null : new PhaseTimes());
+        }
+    }
+
+    /**
+     * 
+     * @param checkpointer Saves the state at the start of every so many generations
+     * @param trial Trial this run is, starting at 1
+     */
+    void setCheckpointer(Checkpointer checkpointer, int trial) {
+        this.checkpointer = checkpointer;
+        this.checkpointTrial = trial;
+    }
+
+    /**
+     * <p>Continue from a checkpoint instead of a random population. The random number generator given to the constructor must be the one saved with the checkpoint.</p>
+     * @param generation Generation to start from
+     * @param tours Population at the start of that generation, one itinerary after another
+     * @param fitness Distance of each itinerary
+     */
+    void resume(int generation, int[] tours, double[] fitness) {
+        if (fitness.length != config.getPopulationSize() || tours.length != fitness.length * map.getNumSites()) {
+            throw new RuntimeException("Checkpoint population doesn't match config: " + fitness.length + " itineraries of " + (tours.length / Math.max(1, fitness.length)) + " sites");
+        }
+        final int numSites = map.getNumSites();
+        for (int index = 0; index < fitness.length; index++) {
+            System.arraycopy(tours, index * numSites, bestSolution, 0, numSites);
+            current.set(index, bestSolution, fitness[index]);
+        }
+        this.startGeneration = generation;
+        this.isResumed = true;
+    }
+
+    /**
+     * 
+     * @param solutionListener Told each time the best itinerary gets shorter, on the thread running the algorithm. Null to not tell anyone.
+     */
+    void setSolutionListener(SolutionListener solutionListener) {
+        this.solutionListener = solutionListener;
+    }
+
+    /**
+     * 
+     * @param queuedNanos From System.nanoTime. The config's time limit counts from then instead of from the start of run, so it includes time spent waiting to run.
+     */
+    void setQueuedNanos(long queuedNanos) {
+        this.queuedNanos = queuedNanos;
+        this.isQueuedNanosSet = true;
+    }
+
+    /**
+     * <p>Stop after the generation being run, as if it were the last. Safe to call from any thread.</p>
+     */
+    void requestStop() {
+        isStopRequested = true;
+    }
+
+    /**
+     * 
+     * @param traceWriter Prints the best of each generation in the background. Null to print directly to out.
+     */
+    void setTraceWriter(TraceWriter traceWriter) {
+        this.traceWriter = traceWriter;
+    }
+
+    /**
+     * 
+     * @param label Printed before the best of each generation
+     */
+    void setLabel(String label) {
+        this.label = label;
+    }
+
+    /**
+     * 
+     * @return Best itinerary of the final generation
+     */
+    int[] getBestSolution() {
+        return bestSolution;
+    }
+
+    double getBestSolutionDistance() {
+        return bestSolutionDistance;
+    }
+
+    /**
+     * 
+     * @return Generations run by the last call to run, counting any before a resumed checkpoint
+     */
+    int getGenerationsRun() {
+        return generationsRun;
+    }
+
+    /**
+     * 
+     * @return Why the last call to run stopped early, or null if it ran every generation
+     */
+    String getStopReason() {
+        return stopReason;
+    }
+
+    /**
+     * 
+     * @return Times the population was replaced because it lacked diversity
+     */
+    int getRestarts() {
+        return restarts;
+    }
+}
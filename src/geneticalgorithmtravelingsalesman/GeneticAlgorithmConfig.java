@@ -0,0 +1,324 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+/**
+ * <p>Parameters for one run of the genetic algorithm. Defaults match the command-line defaults in Main.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+public class GeneticAlgorithmConfig {
+
+    private int populationSize = Main.DEFAULT_POPULATION_SIZE;
+    private double percentageMate = Main.DEFAULT_PERCENTAGE_MATE;
+    private int generations = Main.DEFAULT_GENERATIONS;
+    private boolean elitism = Main.DEFAULT_ELITISM;
+    private double crossOverRate = Main.DEFAULT_CROSS_OVER_RATE;
+    private double mutationRate = Main.DEFAULT_MUTATION_RATE;
+    private boolean printBestOfEachGeneration = Main.DEFAULT_PRINT_BEST_OF_EACH_GENERATION;
+    private int workers = Main.DEFAULT_WORKERS;
+    private CrossoverOperator crossover = Main.DEFAULT_CROSSOVER;
+    private MutationOperator mutation = Main.DEFAULT_MUTATION;
+    private LocalSearchMode localSearch = Main.DEFAULT_LOCAL_SEARCH;
+    private int neighbors = Main.DEFAULT_NEIGHBORS;
+    private SelectionScheme selection = Main.DEFAULT_SELECTION;
+    private int tournamentSize = Main.DEFAULT_TOURNAMENT_SIZE;
+    private int islands = Main.DEFAULT_ISLANDS;
+    private int migrationInterval = Main.DEFAULT_MIGRATION_INTERVAL;
+    private int migrants = Main.DEFAULT_MIGRANTS;
+    private MigrationTopology topology = Main.DEFAULT_TOPOLOGY;
+    private int stagnationGenerations = Main.DEFAULT_STAGNATION;
+    private double targetDistance = Main.DEFAULT_TARGET_DISTANCE;
+    private long timeLimitMillis = Main.DEFAULT_TIME_LIMIT_MILLIS;
+    private double diversityThreshold = Main.DEFAULT_DIVERSITY;
+    private DiversityResponse diversityResponse = Main.DEFAULT_DIVERSITY_RESPONSE;
+    private int fitnessCacheSize = Main.DEFAULT_FITNESS_CACHE;
+    private int metricsDiversityInterval = Main.DEFAULT_METRICS_DIVERSITY_INTERVAL;
+
+    public int getPopulationSize() {
+        return populationSize;
+    }
+
+    public void setPopulationSize(int populationSize) {
+        this.populationSize = populationSize;
+    }
+
+    public double getPercentageMate() {
+        return percentageMate;
+    }
+
+    public void setPercentageMate(double percentageMate) {
+        this.percentageMate = percentageMate;
+    }
+
+    /**
+     * 
+     * @return How many of the fitest get to mate each generation
+     */
+    public int getNumFitestToMate() {
+        return (int) Math.round(populationSize * percentageMate);
+    }
+
+    public int getGenerations() {
+        return generations;
+    }
+
+    public void setGenerations(int generations) {
+        this.generations = generations;
+    }
+
+    public boolean isElitism() {
+        return elitism;
+    }
+
+    public void setElitism(boolean elitism) {
+        this.elitism = elitism;
+    }
+
+    public double getCrossOverRate() {
+        return crossOverRate;
+    }
+
+    public void setCrossOverRate(double crossOverRate) {
+        this.crossOverRate = crossOverRate;
+    }
+
+    public double getMutationRate() {
+        return mutationRate;
+    }
+
+    public void setMutationRate(double mutationRate) {
+        this.mutationRate = mutationRate;
+    }
+
+    public boolean isPrintBestOfEachGeneration() {
+        return printBestOfEachGeneration;
+    }
+
+    public void setPrintBestOfEachGeneration(boolean printBestOfEachGeneration) {
+        this.printBestOfEachGeneration = printBestOfEachGeneration;
+    }
+
+    /**
+     * 
+     * @return Number of threads used to breed the children of each generation
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public CrossoverOperator getCrossover() {
+        return crossover;
+    }
+
+    public void setCrossover(CrossoverOperator crossover) {
+        this.crossover = crossover;
+    }
+
+    public MutationOperator getMutation() {
+        return mutation;
+    }
+
+    public void setMutation(MutationOperator mutation) {
+        this.mutation = mutation;
+    }
+
+    public LocalSearchMode getLocalSearch() {
+        return localSearch;
+    }
+
+    public void setLocalSearch(LocalSearchMode localSearch) {
+        this.localSearch = localSearch;
+    }
+
+    /**
+     * 
+     * @return How many nearest neighbors of each site local search tries moves toward
+     */
+    public int getNeighbors() {
+        return neighbors;
+    }
+
+    public void setNeighbors(int neighbors) {
+        this.neighbors = neighbors;
+    }
+
+    public SelectionScheme getSelection() {
+        return selection;
+    }
+
+    public void setSelection(SelectionScheme selection) {
+        this.selection = selection;
+    }
+
+    public int getTournamentSize() {
+        return tournamentSize;
+    }
+
+    public void setTournamentSize(int tournamentSize) {
+        this.tournamentSize = tournamentSize;
+    }
+
+    /**
+     * 
+     * @return Number of populations evolving at once. More than one uses the island model.
+     */
+    public int getIslands() {
+        return islands;
+    }
+
+    public void setIslands(int islands) {
+        this.islands = islands;
+    }
+
+    /**
+     * 
+     * @return Generations between each exchange of itineraries between islands
+     */
+    public int getMigrationInterval() {
+        return migrationInterval;
+    }
+
+    public void setMigrationInterval(int migrationInterval) {
+        this.migrationInterval = migrationInterval;
+    }
+
+    /**
+     * 
+     * @return Number of best itineraries each island sends in each exchange
+     */
+    public int getMigrants() {
+        return migrants;
+    }
+
+    public void setMigrants(int migrants) {
+        this.migrants = migrants;
+    }
+
+    public MigrationTopology getTopology() {
+        return topology;
+    }
+
+    public void setTopology(MigrationTopology topology) {
+        this.topology = topology;
+    }
+
+    /**
+     * 
+     * @return Stop once the best itinerary hasn't improved for this many generations. 0 to never stop early for this.
+     */
+    public int getStagnationGenerations() {
+        return stagnationGenerations;
+    }
+
+    public void setStagnationGenerations(int stagnationGenerations) {
+        this.stagnationGenerations = stagnationGenerations;
+    }
+
+    /**
+     * 
+     * @return Stop once the best itinerary is at most this long. 0 for no target.
+     */
+    public double getTargetDistance() {
+        return targetDistance;
+    }
+
+    public void setTargetDistance(double targetDistance) {
+        this.targetDistance = targetDistance;
+    }
+
+    /**
+     * 
+     * @return Stop once a run has taken this long. 0 for no limit.
+     */
+    public long getTimeLimitMillis() {
+        return timeLimitMillis;
+    }
+
+    public void setTimeLimitMillis(long timeLimitMillis) {
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    /**
+     * 
+     * @return Respond with the diversity response when the fraction of distinct itineraries in the population falls below this. 0 to never check.
+     */
+    public double getDiversityThreshold() {
+        return diversityThreshold;
+    }
+
+    public void setDiversityThreshold(double diversityThreshold) {
+        this.diversityThreshold = diversityThreshold;
+    }
+
+    public DiversityResponse getDiversityResponse() {
+        return diversityResponse;
+    }
+
+    public void setDiversityResponse(DiversityResponse diversityResponse) {
+        this.diversityResponse = diversityResponse;
+    }
+
+    /**
+     * 
+     * @return Itineraries each breeder remembers the distance of, so copies aren't scored again. 0 to not remember any.
+     */
+    public int getFitnessCacheSize() {
+        return fitnessCacheSize;
+    }
+
+    public void setFitnessCacheSize(int fitnessCacheSize) {
+        this.fitnessCacheSize = fitnessCacheSize;
+    }
+
+    /**
+     * 
+     * @return When collecting metrics, measure the diversity of only every this many generations, since it takes about as long as scoring the population
+     */
+    public int getMetricsDiversityInterval() {
+        return metricsDiversityInterval;
+    }
+
+    public void setMetricsDiversityInterval(int metricsDiversityInterval) {
+        this.metricsDiversityInterval = metricsDiversityInterval;
+    }
+
+    /**
+     * 
+     * @return New config with the same parameters
+     */
+    public GeneticAlgorithmConfig copy() {
+        GeneticAlgorithmConfig copy = new GeneticAlgorithmConfig();
+        copy.populationSize = populationSize;
+        copy.percentageMate = percentageMate;
+        copy.generations = generations;
+        copy.elitism = elitism;
+        copy.crossOverRate = crossOverRate;
+        copy.mutationRate = mutationRate;
+        copy.printBestOfEachGeneration = printBestOfEachGeneration;
+        copy.workers = workers;
+        copy.crossover = crossover;
+        copy.mutation = mutation;
+        copy.localSearch = localSearch;
+        copy.neighbors = neighbors;
+        copy.selection = selection;
+        copy.tournamentSize = tournamentSize;
+        copy.islands = islands;
+        copy.migrationInterval = migrationInterval;
+        copy.migrants = migrants;
+        copy.topology = topology;
+        copy.stagnationGenerations = stagnationGenerations;
+        copy.targetDistance = targetDistance;
+        copy.timeLimitMillis = timeLimitMillis;
+        copy.diversityThreshold = diversityThreshold;
+        copy.diversityResponse = diversityResponse;
+        copy.fitnessCacheSize = fitnessCacheSize;
+        copy.metricsDiversityInterval = metricsDiversityInterval;
+        return copy;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * <p>Collects generation metrics from every run for JMX.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+public class GeneticAlgorithmMetrics implements GeneticAlgorithmMetricsMBean, MetricsListener {
+
+    static final String OBJECT_NAME = "geneticalgorithmtravelingsalesman:type=GeneticAlgorithmMetrics";
+    private long generations = 0;
+    private String lastRun = "";
+    private int lastGeneration = -1;
+    private double bestDistance;
+    private double meanDistance;
+    private double worstDistance;
+    private int uniqueTours;
+    private double meanEdgeDistance;
+    private int diversityGeneration = -1;
+    private long generationNanos = 0;
+    private final long[] phaseNanos = new long[PhaseTimes.PHASES];
+    private long allocatedBytes = 0;
+    private long fitnessCacheHits = 0;
+    private long fitnessCacheMisses = 0;
+
+    /**
+     * 
+     * @return A new instance, registered with the platform MBean server
+     * @throws JMException
+     */
+    static GeneticAlgorithmMetrics register() throws JMException {
+        GeneticAlgorithmMetrics metrics = new GeneticAlgorithmMetrics();
+        ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+        return metrics;
+    }
+
+    public synchronized void generationFinished(GenerationMetrics metrics) {
+        generations++;
+        lastRun = metrics.getRun();
+        lastGeneration = metrics.getGeneration();
+        bestDistance = metrics.getBestDistance();
+        meanDistance = metrics.getMeanDistance();
+        worstDistance = metrics.getWorstDistance();
+        uniqueTours = metrics.getUniqueTours();
+        meanEdgeDistance = metrics.getMeanEdgeDistance();
+        diversityGeneration = metrics.getDiversityGeneration();
+        generationNanos += metrics.getGenerationNanos();
+        for (int phase = 0; phase < PhaseTimes.PHASES; phase++) {
+            phaseNanos[phase] += metrics.getPhaseTimes().nanos[phase];
+        }
+        allocatedBytes += metrics.getPhaseTimes().allocatedBytes;
+        fitnessCacheHits += metrics.getPhaseTimes().fitnessCacheHits;
+        fitnessCacheMisses += metrics.getPhaseTimes().fitnessCacheMisses;
+    }
+
+    public synchronized long getGenerations() {
+        return generations;
+    }
+
+    public synchronized String getLastRun() {
+        return lastRun;
+    }
+
+    public synchronized int getLastGeneration() {
+        return lastGeneration;
+    }
+
+    public synchronized double getBestDistance() {
+        return bestDistance;
+    }
+
+    public synchronized double getMeanDistance() {
+        return meanDistance;
+    }
+
+    public synchronized double getWorstDistance() {
+        return worstDistance;
+    }
+
+    public synchronized int getUniqueTours() {
+        return uniqueTours;
+    }
+
+    public synchronized double getMeanEdgeDistance() {
+        return meanEdgeDistance;
+    }
+
+    public synchronized int getDiversityGeneration() {
+        return diversityGeneration;
+    }
+
+    public synchronized double getGenerationMillis() {
+        return generationNanos / 1e6;
+    }
+
+    public synchronized double getSelectionMillis() {
+        return phaseNanos[PhaseTimes.SELECTION] / 1e6;
+    }
+
+    public synchronized double getCrossoverMillis() {
+        return phaseNanos[PhaseTimes.CROSSOVER] / 1e6;
+    }
+
+    public synchronized double getRepairMillis() {
+        return phaseNanos[PhaseTimes.REPAIR] / 1e6;
+    }
+
+    public synchronized double getMutationMillis() {
+        return phaseNanos[PhaseTimes.MUTATION] / 1e6;
+    }
+
+    public synchronized double getEvaluationMillis() {
+        return phaseNanos[PhaseTimes.EVALUATION] / 1e6;
+    }
+
+    public synchronized double getLocalSearchMillis() {
+        return phaseNanos[PhaseTimes.LOCAL_SEARCH] / 1e6;
+    }
+
+    public synchronized double getMetricsMillis() {
+        return phaseNanos[PhaseTimes.METRICS] / 1e6;
+    }
+
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public synchronized long getFitnessCacheHits() {
+        return fitnessCacheHits;
+    }
+
+    public synchronized long getFitnessCacheMisses() {
+        return fitnessCacheMisses;
+    }
+
+    public synchronized double getFitnessCacheHitRate() {
+        long lookups = fitnessCacheHits + fitnessCacheMisses;
+        return lookups == 0 ? Double.NaN : (double) fitnessCacheHits / lookups;
+    }
+
+    public synchronized void reset() {
+        generations = 0;
+        lastRun = "";
+        lastGeneration = -1;
+        diversityGeneration = -1;
+        generationNanos = 0;
+        for (int phase = 0; phase < PhaseTimes.PHASES; phase++) {
+            phaseNanos[phase] = 0;
+        }
+        allocatedBytes = 0;
+        fitnessCacheHits = 0;
+        fitnessCacheMisses = 0;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+/**
+ * <p>JMX view of the genetic algorithm: the most recent generation of any run, and times and allocations summed over every generation so far.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+public interface GeneticAlgorithmMetricsMBean {
+
+    long getGenerations();
+
+    String getLastRun();
+
+    int getLastGeneration();
+
+    double getBestDistance();
+
+    double getMeanDistance();
+
+    double getWorstDistance();
+
+    int getUniqueTours();
+
+    double getMeanEdgeDistance();
+
+    /**
+     * 
+     * @return Generation of the last run that unique tours and mean edge distance were measured in, which is only every so many generations
+     */
+    int getDiversityGeneration();
+
+    double getGenerationMillis();
+
+    double getSelectionMillis();
+
+    double getCrossoverMillis();
+
+    double getRepairMillis();
+
+    double getMutationMillis();
+
+    double getEvaluationMillis();
+
+    double getLocalSearchMillis();
+
+    /**
+     * 
+     * @return Time spent measuring these metrics, which the generation time includes
+     */
+    double getMetricsMillis();
+
+    long getAllocatedBytes();
+
+    long getFitnessCacheHits();
+
+    long getFitnessCacheMisses();
+
+    /**
+     * 
+     * @return Fraction of lookups in the fitness cache that found the itinerary, or NaN if there were none
+     */
+    double getFitnessCacheHitRate();
+
+    void reset();
+}
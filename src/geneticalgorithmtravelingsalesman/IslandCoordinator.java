@@ -0,0 +1,223 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * <p>Runs genetic trials as an island model spread over separate processes (see IslandWorker), which connect over TCP.</p>
+ * <p>For each trial, sends every island the map, config and a seed, relays migrants between islands according to the topology, and collects each island's best itinerary. Only one trial runs at a time. As with IslandModel, migrants arrive whenever the network delivers them, so trials aren't reproducible from the seed.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class IslandCoordinator {
+
+    private final ServerSocket serverSocket;
+    private final int islands;
+    private final List<Connection> connections;
+    private final BlockingQueue<Result> results = new LinkedBlockingQueue<Result>();
+    // Trial currently running, so late migrants from an earlier trial are dropped
+    private volatile int trial = -1;
+    private volatile MigrationTopology topology = MigrationTopology.RING;
+    private volatile boolean isShutdown = false;
+    private int[] bestSolution = null;
+
+    /**
+     * 
+     * @param port
+     * @param islands Number of island processes to wait for
+     * @throws IOException
+     */
+    IslandCoordinator(int port, int islands) throws IOException {
+        this.serverSocket = new ServerSocket(port);
+        this.islands = islands;
+        this.connections = new ArrayList<Connection>(islands);
+    }
+
+    /**
+     * 
+     * @return Port listened on, which is chosen by the system if 0 was asked for
+     */
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * <p>Block until every island process has connected.</p>
+     * @param out
+     * @throws IOException
+     */
+    void awaitIslands(PrintStream out) throws IOException {
+        out.println("Waiting for " + islands + " island processes to connect on port " + serverSocket.getLocalPort() + "...");
+        while (connections.size() < islands) {
+            Socket socket = serverSocket.accept();
+            socket.setTcpNoDelay(true);
+            Connection connection = new Connection(socket, connections.size());
+            connections.add(connection);
+            out.println("  Island #" + connections.size() + " connected from " + socket.getRemoteSocketAddress());
+        }
+        for (Connection connection : connections) {
+            Thread reader = new Thread(connection, "island-" + (connection.island + 1));
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    /**
+     * <p>Run one genetic trial across all islands.</p>
+     * @param map
+     * @param config
+     * @param random Used to seed each island
+     * @return The shortest distance found by any island
+     * @throws Exception
+     */
+    synchronized double runTrial(SalesmanMap map, GeneticAlgorithmConfig config, Rng random) throws Exception {
+        results.clear();
+        topology = config.getTopology();
+        trial++;
+
+        for (Connection connection : connections) {
+            MigrationProtocol.Setup setup = new MigrationProtocol.Setup();
+            setup.trial = trial;
+            setup.island = connection.island;
+            setup.islands = islands;
+            setup.seed = random.nextLong();
+            setup.map = map;
+            setup.config = config;
+            synchronized (connection.out) {
+                MigrationProtocol.writeSetup(connection.out, setup);
+            }
+        }
+
+        double bestSolutionDistance = -1;
+        int received = 0;
+        while (received < islands) {
+            Result result = results.take();
+            if (result.error != null) {
+                throw new RuntimeException("Lost island #" + (result.island + 1) + ": " + result.error.getMessage(), result.error);
+            }
+            if (result.trial != trial) {
+                continue;
+            }
+            received++;
+            if (bestSolutionDistance == -1 || result.migrant.distance < bestSolutionDistance) {
+                bestSolutionDistance = result.migrant.distance;
+                bestSolution = result.migrant.itinerary;
+            }
+        }
+        return bestSolutionDistance;
+    }
+
+    int[] getBestSolution() {
+        return bestSolution;
+    }
+
+    /**
+     * <p>Tell every island to exit, and stop listening.</p>
+     */
+    void shutdown() {
+        isShutdown = true;
+        for (Connection connection : connections) {
+            try {
+                synchronized (connection.out) {
+                    connection.out.writeByte(MigrationProtocol.SHUTDOWN);
+                    connection.out.flush();
+                }
+                connection.socket.close();
+            } catch (IOException e) {
+                // Already gone
+            }
+        }
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Nothing to do
+        }
+    }
+
+    /**
+     * <p>Forward a migrant from an island to the islands it is connected to.</p>
+     */
+    private void relay(int from, int migrantTrial, Migrant migrant) throws IOException {
+        for (int other = 0; other < islands; other++) {
+            if (other == from) {
+                continue;
+            }
+            if (topology == MigrationTopology.RING && other != (from + 1) % islands) {
+                continue;
+            }
+            Connection connection = connections.get(other);
+            synchronized (connection.out) {
+                MigrationProtocol.writeItinerary(connection.out, MigrationProtocol.MIGRANT, migrantTrial, migrant.distance, migrant.itinerary, 0, migrant.itinerary.length);
+            }
+        }
+    }
+
+    private static class Result {
+
+        final int trial;
+        final int island;
+        final Migrant migrant;
+        final IOException error;
+
+        Result(int trial, int island, Migrant migrant, IOException error) {
+            this.trial = trial;
+            this.island = island;
+            this.migrant = migrant;
+            this.error = error;
+        }
+    }
+
+    /**
+     * <p>One island process. Runs on its own thread, reading messages from the island.</p>
+     */
+    private class Connection implements Runnable {
+
+        final Socket socket;
+        final int island;
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        Connection(Socket socket, int island) throws IOException {
+            this.socket = socket;
+            this.island = island;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    byte type = in.readByte();
+                    int messageTrial = in.readInt();
+                    Migrant migrant = MigrationProtocol.readItinerary(in);
+                    if (type == MigrationProtocol.MIGRANT) {
+                        if (messageTrial == trial) {
+                            relay(island, messageTrial, migrant);
+                        }
+                    } else if (type == MigrationProtocol.RESULT) {
+                        results.add(new Result(messageTrial, island, migrant, null));
+                    } else {
+                        throw new IOException("Unexpected message type: " + type);
+                    }
+                }
+            } catch (IOException e) {
+                if (!isShutdown) {
+                    results.add(new Result(trial, island, null, e));
+                }
+            }
+        }
+    }
+}
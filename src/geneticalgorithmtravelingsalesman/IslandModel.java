@@ -0,0 +1,205 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Runs several populations (islands) of the genetic algorithm at once, each on its own thread. Every so many generations, each island sends copies of its best itineraries to the islands it is connected to, which replace their worst.</p>
+ * <p>Migrants are passed through a lock-free queue per island, so an island never waits for another. The price is that runs aren't reproducible from their seed: which generation takes in a migrant depends on how the threads are scheduled.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class IslandModel {
+
+    private final SalesmanMap map;
+    private final GeneticAlgorithmConfig config;
+    private final ExecutorService breedingPool;
+    private final Rng random;
+    private final PrintStream out;
+    private final List<Queue<Migrant>> inboxes;
+    private int[] bestSolution = null;
+    private double bestSolutionDistance = -1;
+    private int generationsRun = 0;
+    private String stopReason = null;
+    private int restarts = 0;
+    private MetricsListener metricsListener = null;
+    private String run = "";
+    private TraceWriter traceWriter = null;
+
+    /**
+     * 
+     * @param map
+     * @param config Population size and generations are per island
+     * @param breedingPool Shared by all islands, if config has more than one worker. May be null.
+     * @param random Only used to seed each island's random number generator
+     * @param out
+     */
+    IslandModel(SalesmanMap map, GeneticAlgorithmConfig config, ExecutorService breedingPool, Rng random, PrintStream out) {
+        this.map = map;
+        this.config = config;
+        this.breedingPool = breedingPool;
+        this.random = random;
+        this.out = out;
+        this.inboxes = new ArrayList<Queue<Migrant>>(config.getIslands());
+        for (int island = 0; island < config.getIslands(); island++) {
+            inboxes.add(new ConcurrentLinkedQueue<Migrant>());
+        }
+    }
+
+    /**
+     * 
+     * @return The shortest distance found by any island
+     * @throws Exception
+     */
+    double run() throws Exception {
+        final int islands = config.getIslands();
+        ExecutorService islandPool = Executors.newFixedThreadPool(islands);
+        try {
+            List<GeneticAlgorithm> algorithms = new ArrayList<GeneticAlgorithm>(islands);
+            List<Future<Double>> futures = new ArrayList<Future<Double>>(islands);
+            for (int island = 0; island < islands; island++) {
+                final GeneticAlgorithm algorithm = new GeneticAlgorithm(map, config, breedingPool, random.split(), out);
+                algorithm.setLabel("Island #" + (island + 1) + ": ");
+                algorithm.setMigrationChannel(new QueueChannel(island));
+                algorithm.setTraceWriter(traceWriter);
+                if (metricsListener != null) {
+                    algorithm.setMetricsListener(metricsListener, run + " island " + (island + 1));
+                }
+                algorithms.add(algorithm);
+            }
+            for (final GeneticAlgorithm algorithm : algorithms) {
+                futures.add(islandPool.submit(new Callable<Double>() {
+
+                    public Double call() throws Exception {
+                        return algorithm.run();
+                    }
+                }));
+            }
+
+            for (int island = 0; island < islands; island++) {
+                double distance;
+                try {
+                    distance = futures.get(island).get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw e;
+                }
+                GeneticAlgorithm algorithm = algorithms.get(island);
+                if (bestSolutionDistance == -1 || distance < bestSolutionDistance) {
+                    bestSolutionDistance = distance;
+                    bestSolution = algorithm.getBestSolution();
+                }
+                restarts += algorithm.getRestarts();
+            }
+
+            // Islands stop early on their own, so the run only stopped early if the last island to finish did
+            for (GeneticAlgorithm algorithm : algorithms) {
+                if (algorithm.getGenerationsRun() >= generationsRun) {
+                    generationsRun = algorithm.getGenerationsRun();
+                    stopReason = algorithm.getStopReason();
+                }
+            }
+        } finally {
+            islandPool.shutdownNow();
+        }
+
+        return bestSolutionDistance;
+    }
+
+    /**
+     * 
+     * @param metricsListener Receives the metrics of every generation of every island. Null to not collect metrics.
+     * @param run Identifies this run in the metrics
+     */
+    void setMetricsListener(MetricsListener metricsListener, String run) {
+        this.metricsListener = metricsListener;
+        this.run = run;
+    }
+
+    /**
+     * 
+     * @param traceWriter Prints the best of each generation of every island in the background. Null to print directly to out.
+     */
+    void setTraceWriter(TraceWriter traceWriter) {
+        this.traceWriter = traceWriter;
+    }
+
+    int[] getBestSolution() {
+        return bestSolution;
+    }
+
+    /**
+     * 
+     * @return Most generations run by any island
+     */
+    int getGenerationsRun() {
+        return generationsRun;
+    }
+
+    /**
+     * 
+     * @return Why the island that ran the most generations stopped early, or null if it ran every generation
+     */
+    String getStopReason() {
+        return stopReason;
+    }
+
+    /**
+     * 
+     * @return Restarts of all islands together
+     */
+    int getRestarts() {
+        return restarts;
+    }
+
+    /**
+     * <p>Sends to the inboxes of the connected islands, and receives from the island's own inbox.</p>
+     */
+    private class QueueChannel implements MigrationChannel {
+
+        private final int island;
+
+        QueueChannel(int island) {
+            this.island = island;
+        }
+
+        public void emigrate(int[] tours, int offset, int numSites, double distance) {
+            final int islands = inboxes.size();
+            if (config.getTopology() == MigrationTopology.RING) {
+                send((island + 1) % islands, tours, offset, numSites, distance);
+            } else {
+                for (int other = 0; other < islands; other++) {
+                    if (other != island) {
+                        send(other, tours, offset, numSites, distance);
+                    }
+                }
+            }
+        }
+
+        private void send(int other, int[] tours, int offset, int numSites, double distance) {
+            if (other == island) {
+                return;
+            }
+            int[] itinerary = new int[numSites];
+            System.arraycopy(tours, offset, itinerary, 0, numSites);
+            inboxes.get(other).offer(new Migrant(itinerary, distance));
+        }
+
+        public Migrant immigrate() {
+            return inboxes.get(island).poll();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * <p>One island of a distributed island model: connects to an IslandCoordinator, then runs the genetic algorithm for each trial it is sent, swapping migrants with the other islands through the coordinator.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class IslandWorker implements MigrationChannel {
+
+    private static final int CONNECT_ATTEMPTS = 60;
+    private static final long CONNECT_RETRY_MILLIS = 500;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    // SETUP messages, or null for shutdown
+    private final BlockingQueue<Object> control = new LinkedBlockingQueue<Object>();
+    private final Queue<Migrant> inbox = new ConcurrentLinkedQueue<Migrant>();
+    private volatile int trial = -1;
+
+    private IslandWorker(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * <p>Connect to the coordinator (retrying for a while, in case it hasn't started yet), then run trials until told to shut down.</p>
+     * @param host
+     * @param port
+     * @param out Where to print progress
+     * @throws Exception
+     */
+    static void run(String host, int port, PrintStream out) throws Exception {
+        Socket socket = null;
+        for (int attempt = 1; socket == null; attempt++) {
+            try {
+                socket = new Socket(host, port);
+            } catch (ConnectException e) {
+                if (attempt >= CONNECT_ATTEMPTS) {
+                    throw e;
+                }
+                Thread.sleep(CONNECT_RETRY_MILLIS);
+            }
+        }
+        socket.setTcpNoDelay(true);
+        out.println("Connected to coordinator at " + host + ":" + port);
+
+        IslandWorker worker = new IslandWorker(socket);
+        try {
+            worker.runTrials(out);
+        } finally {
+            socket.close();
+        }
+    }
+
+    private void runTrials(PrintStream printStream) throws Exception {
+        Thread reader = new Thread(new Runnable() {
+
+            public void run() {
+                read();
+            }
+        }, "coordinator-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        ExecutorService breedingPool = null;
+        try {
+            while (true) {
+                Object message = control.take();
+                if (!(message instanceof MigrationProtocol.Setup)) {
+                    return;
+                }
+                MigrationProtocol.Setup setup = (MigrationProtocol.Setup) message;
+                inbox.clear();
+                trial = setup.trial;
+
+                if (breedingPool == null && setup.config.getWorkers() > 1) {
+                    breedingPool = Executors.newFixedThreadPool(setup.config.getWorkers());
+                }
+
+                printStream.println();
+                printStream.println(">>> RUNNING TRIAL #" + (setup.trial + 1) + " AS ISLAND #" + (setup.island + 1) + " out of " + setup.islands + " <<<");
+                GeneticAlgorithm algorithm = new GeneticAlgorithm(setup.map, setup.config, breedingPool, new Rng(setup.seed), printStream);
+                algorithm.setLabel("Island #" + (setup.island + 1) + ": ");
+                algorithm.setMigrationChannel(this);
+                double distance = algorithm.run();
+                printStream.println("After " + algorithm.getGenerationsRun() + " generations, found shortest distance of: " + distance);
+                if (algorithm.getStopReason() != null) {
+                    printStream.println("  Stopped early: " + algorithm.getStopReason());
+                }
+
+                int[] best = algorithm.getBestSolution();
+                synchronized (out) {
+                    MigrationProtocol.writeItinerary(out, MigrationProtocol.RESULT, setup.trial, distance, best, 0, best.length);
+                }
+            }
+        } finally {
+            if (breedingPool != null) {
+                breedingPool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * <p>Read messages from the coordinator until the connection closes.</p>
+     */
+    private void read() {
+        try {
+            while (true) {
+                byte type = in.readByte();
+                if (type == MigrationProtocol.SETUP) {
+                    control.add(MigrationProtocol.readSetup(in));
+                } else if (type == MigrationProtocol.MIGRANT) {
+                    int messageTrial = in.readInt();
+                    Migrant migrant = MigrationProtocol.readItinerary(in);
+                    if (messageTrial == trial) {
+                        inbox.offer(migrant);
+                    }
+                } else if (type == MigrationProtocol.SHUTDOWN) {
+                    break;
+                } else {
+                    throw new IOException("Unexpected message type: " + type);
+                }
+            }
+        } catch (IOException e) {
+            if (!socket.isClosed()) {
+                System.err.println("Lost connection to coordinator: " + e.getMessage());
+            }
+        }
+        control.add(Boolean.FALSE);
+    }
+
+    public void emigrate(int[] tours, int offset, int numSites, double distance) {
+        try {
+            synchronized (out) {
+                MigrationProtocol.writeItinerary(out, MigrationProtocol.MIGRANT, trial, distance, tours, offset, numSites);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't send migrant to coordinator: " + e.getMessage(), e);
+        }
+    }
+
+    public Migrant immigrate() {
+        return inbox.poll();
+    }
+}
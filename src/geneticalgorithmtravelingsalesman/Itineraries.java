@@ -0,0 +1,122 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+
+/**
+ * <p>Helpers for itineraries, which are arrays of site numbers in the order they are visited.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class Itineraries {
+
+    private Itineraries() {
+    }
+
+    /**
+     * <p>Random itinerary that starts at site 0 and visits the rest in random order.</p>
+     * @param finish The last site
+     * @param random
+     * @return
+     */
+    static int[] generateRandomItinerary(int finish, Rng random) {
+        int[] itinerary = new int[finish + 1];
+        fillRandomItinerary(itinerary, random);
+        return itinerary;
+    }
+
+    /**
+     * <p>Overwrite itinerary with one that starts at site 0 and visits the rest in random order.</p>
+     * @param itinerary
+     * @param random
+     */
+    static void fillRandomItinerary(int[] itinerary, Rng random) {
+        int finish = itinerary.length - 1;
+        for (int site = 0; site <= finish; site++) {
+            itinerary[site] = site;
+        }
+
+        // Always start at 0, so shuffle the rest (Fisher-Yates)
+        for (int i = finish; i > 1; i--) {
+            int j = 1 + random.nextInt(i);
+            int temp = itinerary[i];
+            itinerary[i] = itinerary[j];
+            itinerary[j] = temp;
+        }
+    }
+
+    /**
+     * 
+     * @param itinerary
+     * @param map
+     * @return
+     */
+    static double getTotalTravel(int[] itinerary, SalesmanMap map) {
+        return getTotalTravel(itinerary, 0, itinerary.length, map);
+    }
+
+    /**
+     * 
+     * @param tours
+     * @param offset Where the itinerary starts in tours
+     * @param numSites
+     * @param map
+     * @return Includes the edge back to the first site if the map has closed tours
+     */
+    static double getTotalTravel(int[] tours, int offset, int numSites, SalesmanMap map) {
+        double distance = 0;
+
+        for (int index = offset; index < offset + numSites - 1; index++) {
+            distance += map.getDistance(tours[index], tours[index + 1]);
+        }
+        if (map.isClosedTour() && numSites > 1) {
+            distance += map.getDistance(tours[offset + numSites - 1], tours[offset]);
+        }
+
+        return distance;
+    }
+
+    /**
+     * 
+     * @param itinerary
+     * @return
+     */
+    static String itineraryToString(int[] itinerary) {
+        return itineraryToString(itinerary, 0, itinerary.length);
+    }
+
+    /**
+     * 
+     * @param tours
+     * @param offset Where the itinerary starts in tours
+     * @param numSites
+     * @return
+     */
+    static String itineraryToString(int[] tours, int offset, int numSites) {
+        StringBuilder buffer = new StringBuilder();
+        appendItinerary(buffer, tours, offset, numSites);
+        return buffer.toString();
+    }
+
+    /**
+     * <p>Same as itineraryToString, but appends to a buffer so nothing is allocated.</p>
+     * @param buffer
+     * @param tours
+     * @param offset Where the itinerary starts in tours
+     * @param numSites
+     */
+    static void appendItinerary(StringBuilder buffer, int[] tours, int offset, int numSites) {
+        for (int i = 0; i < numSites; i++) {
+            // Same as SalesmanMap.getSiteName
+            if (numSites <= 26) {
+                buffer.append(SalesmanMap.convertByteToChar(tours[offset + i]));
+            } else {
+                buffer.append(tours[offset + i]);
+            }
+            if (i < numSites - 1) {
+                buffer.append(' ');
+            }
+        }
+    }
+}
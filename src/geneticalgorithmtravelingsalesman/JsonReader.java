@@ -0,0 +1,198 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Just enough of a JSON parser for solve requests: objects become maps, arrays lists, numbers doubles, and true, false and null themselves.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class JsonReader {
+
+    // Deeper nesting is refused rather than risk overflowing the stack
+    static final int MAX_DEPTH = 32;
+    private final String text;
+    private int position = 0;
+    private int depth = 0;
+
+    private JsonReader(String text) {
+        this.text = text;
+    }
+
+    /**
+     *
+     * @param text A single JSON value
+     * @return Map, List, Double, String, Boolean or null
+     */
+    static Object parse(String text) {
+        JsonReader reader = new JsonReader(text);
+        Object value = reader.readValue();
+        reader.skipWhitespace();
+        if (reader.position != text.length()) {
+            throw reader.error("Expected end of JSON");
+        }
+        return value;
+    }
+
+    private Object readValue() {
+        skipWhitespace();
+        if (position == text.length()) {
+            throw error("Expected a value");
+        }
+        char c = text.charAt(position);
+        if (c == '{' || c == '[') {
+            if (++depth > MAX_DEPTH) {
+                throw error("Nested more than " + MAX_DEPTH + " deep");
+            }
+            Object value = c == '{' ? readObject() : readArray();
+            depth--;
+            return value;
+        } else if (c == '"') {
+            return readString();
+        } else if (text.startsWith("true", position)) {
+            position += 4;
+            return Boolean.TRUE;
+        } else if (text.startsWith("false", position)) {
+            position += 5;
+            return Boolean.FALSE;
+        } else if (text.startsWith("null", position)) {
+            position += 4;
+            return null;
+        }
+        return readNumber();
+    }
+
+    private Map<String, Object> readObject() {
+        Map<String, Object> object = new LinkedHashMap<String, Object>();
+        position++;
+        skipWhitespace();
+        if (consume('}')) {
+            return object;
+        }
+        do {
+            skipWhitespace();
+            if (position == text.length() || text.charAt(position) != '"') {
+                throw error("Expected a name in quotes");
+            }
+            String name = readString();
+            skipWhitespace();
+            if (!consume(':')) {
+                throw error("Expected ':'");
+            }
+            object.put(name, readValue());
+            skipWhitespace();
+        } while (consume(','));
+        if (!consume('}')) {
+            throw error("Expected ',' or '}'");
+        }
+        return object;
+    }
+
+    private List<Object> readArray() {
+        List<Object> array = new ArrayList<Object>();
+        position++;
+        skipWhitespace();
+        if (consume(']')) {
+            return array;
+        }
+        do {
+            array.add(readValue());
+            skipWhitespace();
+        } while (consume(','));
+        if (!consume(']')) {
+            throw error("Expected ',' or ']'");
+        }
+        return array;
+    }
+
+    private String readString() {
+        StringBuilder string = new StringBuilder();
+        position++;
+        CHARACTERS:
+        while (true) {
+            if (position == text.length()) {
+                throw error("Unterminated string");
+            }
+            char c = text.charAt(position++);
+            if (c == '"') {
+                break CHARACTERS;
+            } else if (c != '\\') {
+                string.append(c);
+                continue CHARACTERS;
+            }
+            if (position == text.length()) {
+                throw error("Unterminated string");
+            }
+            char escaped = text.charAt(position++);
+            switch (escaped) {
+                case 'b':
+                    string.append('\b');
+                    break;
+                case 'f':
+                    string.append('\f');
+                    break;
+                case 'n':
+                    string.append('\n');
+                    break;
+                case 'r':
+                    string.append('\r');
+                    break;
+                case 't':
+                    string.append('\t');
+                    break;
+                case 'u':
+                    if (position + 4 > text.length()) {
+                        throw error("Unterminated escape");
+                    }
+                    try {
+                        string.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid escape");
+                    }
+                    position += 4;
+                    break;
+                default:
+                    // \" \\ \/
+                    string.append(escaped);
+            }
+        }
+        return string.toString();
+    }
+
+    private Double readNumber() {
+        int start = position;
+        while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+            position++;
+        }
+        try {
+            return Double.valueOf(text.substring(start, position));
+        } catch (NumberFormatException e) {
+            position = start;
+            throw error("Expected a value");
+        }
+    }
+
+    private boolean consume(char c) {
+        if (position < text.length() && text.charAt(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at character " + position + " of JSON");
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+/**
+ * <p>Improves an itinerary in place with 2-opt and Or-opt moves until neither finds an improvement.</p>
+ * <p>Moves are only tried toward each site's nearest neighbors, and sites whose neighborhood didn't yield an improvement are skipped (don't-look bits) until a move changes an edge next to them, so each pass is close to linear in the number of sites.</p>
+ * <p>Itineraries are open paths unless the map has closed tours, so moves at either end only break and make the edges that exist. On closed tours the first and last sites are neighbors like any others. Holds scratch buffers, so use one per thread.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class LocalSearch {
+
+    // Ignore improvements smaller than this, so rounding can't cause endless moves
+    private static final double EPSILON = 1e-9;
+    private static final int MAX_SEGMENT_LENGTH = 3;
+    private final SalesmanMap map;
+    private final boolean isClosed;
+    private final int numNeighbors;
+    private final int[] neighbors;
+    private final int[] position;
+    // Sites to look at, as a circular queue
+    private final int[] queue;
+    private final boolean[] inQueue;
+    private int queueHead;
+    private int queueSize;
+    private final int[] segment = new int[MAX_SEGMENT_LENGTH];
+
+    /**
+     * 
+     * @param map
+     * @param numNeighbors How many nearest neighbors of each site to try moves toward
+     */
+    LocalSearch(SalesmanMap map, int numNeighbors) {
+        this.map = map;
+        this.isClosed = map.isClosedTour();
+        this.numNeighbors = Math.max(0, Math.min(numNeighbors, map.getNumSites() - 1));
+        this.neighbors = map.getNeighbors(this.numNeighbors);
+        this.position = new int[map.getNumSites()];
+        this.queue = new int[map.getNumSites()];
+        this.inQueue = new boolean[map.getNumSites()];
+    }
+
+    /**
+     * 
+     * @param itinerary Improved in place
+     * @return How much shorter the total travel is
+     */
+    double improve(int[] itinerary) {
+        final int length = itinerary.length;
+        if (length < 3) {
+            return 0;
+        }
+
+        queueHead = 0;
+        queueSize = 0;
+        for (int index = 0; index < length; index++) {
+            position[itinerary[index]] = index;
+            inQueue[itinerary[index]] = false;
+        }
+        for (int index = 0; index < length; index++) {
+            push(itinerary[index]);
+        }
+
+        double gain = 0;
+        while (queueSize > 0) {
+            int site = queue[queueHead];
+            queueHead = (queueHead + 1) % length;
+            queueSize--;
+            inQueue[site] = false;
+
+            double moveGain = improveTwoOpt(itinerary, site);
+            if (moveGain <= 0) {
+                moveGain = improveOrOpt(itinerary, site);
+            }
+            if (moveGain > 0) {
+                gain += moveGain;
+                push(site);
+            }
+        }
+        return gain;
+    }
+
+    /**
+     * <p>Try replacing the edge on either side of site with an edge to one of its neighbors, reversing the segment in between.</p>
+     * @return Gain of the move made, or 0 if none
+     */
+    private double improveTwoOpt(int[] itinerary, int a) {
+        final int last = itinerary.length - 1;
+        final int i = position[a];
+
+        // Edges (i, i + 1) and (j, j + 1) become (a, c) and (b, d)
+        if (i < last || isClosed) {
+            int b = itinerary[i < last ? i + 1 : 0];
+            double ab = map.getDistance(a, b);
+            for (int n = 0; n < numNeighbors; n++) {
+                int c = neighbors[a * numNeighbors + n];
+                double ac = map.getDistance(a, c);
+                if (ac >= ab) {
+                    break;
+                }
+                int j = position[c];
+                int d = j < last ? itinerary[j + 1] : (isClosed ? itinerary[0] : -1);
+                if (c == b || d == a) {
+                    continue;
+                }
+                double gain = ab - ac + (d == -1 ? 0 : map.getDistance(c, d) - map.getDistance(b, d));
+                if (gain > EPSILON) {
+                    reverse(itinerary, Math.min(i, j) + 1, Math.max(i, j));
+                    push(a, b, c, d);
+                    return gain;
+                }
+            }
+        }
+
+        // Edges (i - 1, i) and (j - 1, j) become (a, c) and (b, d)
+        if (i > 0 || isClosed) {
+            int b = itinerary[i > 0 ? i - 1 : last];
+            double ab = map.getDistance(a, b);
+            for (int n = 0; n < numNeighbors; n++) {
+                int c = neighbors[a * numNeighbors + n];
+                double ac = map.getDistance(a, c);
+                if (ac >= ab) {
+                    break;
+                }
+                int j = position[c];
+                int d = j > 0 ? itinerary[j - 1] : (isClosed ? itinerary[last] : -1);
+                if (c == b || d == a) {
+                    continue;
+                }
+                double gain = ab - ac + (d == -1 ? 0 : map.getDistance(c, d) - map.getDistance(b, d));
+                if (gain > EPSILON) {
+                    reverse(itinerary, Math.min(i, j), Math.max(i, j) - 1);
+                    push(a, b, c, d);
+                    return gain;
+                }
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * <p>Try moving a segment of up to three sites that starts or ends at site so that it sits next to a neighbor of one of its ends, in either orientation.</p>
+     * @return Gain of the move made, or 0 if none
+     */
+    private double improveOrOpt(int[] itinerary, int site) {
+        final int last = itinerary.length - 1;
+        final int i = position[site];
+
+        for (int length = 1; length <= MAX_SEGMENT_LENGTH; length++) {
+            // Segment starting at site, then segment ending at site
+            for (int direction = 0; direction < (length == 1 ? 1 : 2); direction++) {
+                int start = direction == 0 ? i : i - length + 1;
+                int end = start + length - 1;
+                if (start < 0 || end > last || (start == 0 && end == last)) {
+                    continue;
+                }
+                // On a closed tour, moving a segment around fewer than two other sites changes nothing
+                if (isClosed && length > last - 1) {
+                    continue;
+                }
+
+                int first = itinerary[start];
+                int lastOfSegment = itinerary[end];
+                int before = start > 0 ? itinerary[start - 1] : (isClosed ? itinerary[last] : -1);
+                int after = end < last ? itinerary[end + 1] : (isClosed ? itinerary[0] : -1);
+
+                // What is saved by taking the segment out and joining its neighbors
+                double removeGain = (before == -1 ? 0 : map.getDistance(before, first)) + (after == -1 ? 0 : map.getDistance(lastOfSegment, after));
+                if (before != -1 && after != -1) {
+                    removeGain -= map.getDistance(before, after);
+                }
+                if (removeGain <= EPSILON) {
+                    continue;
+                }
+
+                for (int end2 = 0; end2 < 2; end2++) {
+                    // x is the end of the segment placed next to neighbor c, y the other end
+                    int x = end2 == 0 ? first : lastOfSegment;
+                    int y = end2 == 0 ? lastOfSegment : first;
+                    for (int n = 0; n < numNeighbors; n++) {
+                        int c = neighbors[x * numNeighbors + n];
+                        double xc = map.getDistance(x, c);
+                        if (xc >= removeGain) {
+                            break;
+                        }
+                        int j = position[c];
+                        if (j >= start && j <= end) {
+                            continue;
+                        }
+
+                        // Between c and the site after it: c, x ... y, o
+                        if (c != before) {
+                            int o = j < last ? itinerary[j + 1] : (isClosed ? itinerary[0] : -1);
+                            double addCost = xc + (o == -1 ? 0 : map.getDistance(y, o) - map.getDistance(c, o));
+                            double gain = removeGain - addCost;
+                            if (gain > EPSILON) {
+                                moveSegment(itinerary, start, end, j + 1, x != first);
+                                push(before, after, first, lastOfSegment);
+                                push(c, o);
+                                return gain;
+                            }
+                        }
+
+                        // Between the site before c and c: o, y ... x, c
+                        if (c != after) {
+                            int o = j > 0 ? itinerary[j - 1] : (isClosed ? itinerary[last] : -1);
+                            double addCost = xc + (o == -1 ? 0 : map.getDistance(o, y) - map.getDistance(o, c));
+                            double gain = removeGain - addCost;
+                            if (gain > EPSILON) {
+                                moveSegment(itinerary, start, end, j, y != first);
+                                push(before, after, first, lastOfSegment);
+                                push(c, o);
+                                return gain;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * 
+     * @param itinerary
+     * @param from
+     * @param to Inclusive
+     */
+    private void reverse(int[] itinerary, int from, int to) {
+        while (from < to) {
+            int temp = itinerary[from];
+            itinerary[from] = itinerary[to];
+            itinerary[to] = temp;
+            position[itinerary[from]] = from;
+            position[itinerary[to]] = to;
+            from++;
+            to--;
+        }
+    }
+
+    /**
+     * <p>Move itinerary[start] to itinerary[end] so it sits just before what was at position gap.</p>
+     * @param itinerary
+     * @param start
+     * @param end Inclusive
+     * @param gap Position before which to insert, outside of start to end + 1
+     * @param isReversed Whether to reverse the segment
+     */
+    private void moveSegment(int[] itinerary, int start, int end, int gap, boolean isReversed) {
+        int length = end - start + 1;
+        for (int k = 0; k < length; k++) {
+            segment[k] = itinerary[isReversed ? end - k : start + k];
+        }
+
+        int from;
+        int to;
+        if (gap > end) {
+            System.arraycopy(itinerary, end + 1, itinerary, start, gap - end - 1);
+            System.arraycopy(segment, 0, itinerary, gap - length, length);
+            from = start;
+            to = gap - 1;
+        } else {
+            System.arraycopy(itinerary, gap, itinerary, gap + length, start - gap);
+            System.arraycopy(segment, 0, itinerary, gap, length);
+            from = gap;
+            to = end;
+        }
+        for (int index = from; index <= to; index++) {
+            position[itinerary[index]] = index;
+        }
+    }
+
+    private void push(int site1, int site2, int site3, int site4) {
+        push(site1);
+        push(site2);
+        push(site3);
+        push(site4);
+    }
+
+    private void push(int site1, int site2) {
+        push(site1);
+        push(site2);
+    }
+
+    /**
+     * <p>Clear the site's don't-look bit, so it will be looked at again.</p>
+     * @param site Ignored if -1
+     */
+    private void push(int site) {
+        if (site == -1 || inQueue[site]) {
+            return;
+        }
+        inQueue[site] = true;
+        queue[(queueHead + queueSize) % queue.length] = site;
+        queueSize++;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+/**
+ * <p>Which itineraries, if any, are improved with local search (2-opt and Or-opt) each generation.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+public enum LocalSearchMode {
+
+    /**
+     * <p>Plain genetic algorithm.</p>
+     */
+    NONE,
+    /**
+     * <p>Improve the best itinerary of each generation before it mates.</p>
+     */
+    ELITES,
+    /**
+     * <p>Improve every child as it is bred.</p>
+     */
+    CHILDREN;
+
+    /**
+     * 
+     * @param name Case-insensitive
+     * @return
+     */
+    static LocalSearchMode parse(String name) {
+        try {
+            return valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown local search mode: " + name);
+        }
+    }
+}
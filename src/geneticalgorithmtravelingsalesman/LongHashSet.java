@@ -0,0 +1,123 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.util.Arrays;
+
+/**
+ * <p>Open-addressing hash set of primitive longs, so don't box every key. Does not support removal.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class LongHashSet {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private long[] slots;
+    private int size = 0;
+    private boolean containsEmpty = false;
+
+    /**
+     * 
+     * @param expectedSize
+     */
+    LongHashSet(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        slots = newSlots(capacity);
+    }
+
+    /**
+     * 
+     * @param key
+     * @return True if the key was added, false if already in set
+     */
+    boolean add(long key) {
+        if (key == EMPTY) {
+            if (containsEmpty) {
+                return false;
+            }
+            containsEmpty = true;
+            size++;
+            return true;
+        }
+        int mask = slots.length - 1;
+        int index = hash(key) & mask;
+        while (slots[index] != EMPTY) {
+            if (slots[index] == key) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        slots[index] = key;
+        size++;
+        if (size * 2 > slots.length) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * 
+     * @param key
+     * @return
+     */
+    boolean contains(long key) {
+        if (key == EMPTY) {
+            return containsEmpty;
+        }
+        int mask = slots.length - 1;
+        int index = hash(key) & mask;
+        while (slots[index] != EMPTY) {
+            if (slots[index] == key) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * <p>Remove every key, keeping the capacity.</p>
+     */
+    void clear() {
+        Arrays.fill(slots, EMPTY);
+        size = 0;
+        containsEmpty = false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] old = slots;
+        slots = newSlots(old.length * 2);
+        int mask = slots.length - 1;
+        for (long key : old) {
+            if (key != EMPTY) {
+                int index = hash(key) & mask;
+                while (slots[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                slots[index] = key;
+            }
+        }
+    }
+
+    private static long[] newSlots(int capacity) {
+        long[] newSlots = new long[capacity];
+        Arrays.fill(newSlots, EMPTY);
+        return newSlots;
+    }
+
+    private static int hash(long key) {
+        // Mix the bits (from MurmurHash3's finalizer) so grid coordinates spread out
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -4,12 +4,23 @@
  */
 package geneticalgorithmtravelingsalesman;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * <p>Command-line utility to test genetic algorithm on the traveling salesman problem.</p>
@@ -29,7 +40,55 @@ public class Main {
     final static double DEFAULT_MUTATION_RATE = 0.05;
     final static boolean DEFAULT_ELITISM = true;
     final static boolean DEFAULT_PRINT_BEST_OF_EACH_GENERATION = false;
-    final static Random random = new Random();
+    final static boolean DEFAULT_DISTANCE_MATRIX = false;
+    final static int DEFAULT_THREADS = 1;
+    final static int DEFAULT_WORKERS = 1;
+    final static CrossoverOperator DEFAULT_CROSSOVER = CrossoverOperator.UNIFORM;
+    final static MutationOperator DEFAULT_MUTATION = MutationOperator.RESET;
+    final static LocalSearchMode DEFAULT_LOCAL_SEARCH = LocalSearchMode.NONE;
+    final static int DEFAULT_NEIGHBORS = 8;
+    final static SelectionScheme DEFAULT_SELECTION = SelectionScheme.RANK;
+    final static int DEFAULT_TOURNAMENT_SIZE = 2;
+    final static int DEFAULT_ISLANDS = 1;
+    final static int DEFAULT_MIGRATION_INTERVAL = 20;
+    final static int DEFAULT_MIGRANTS = 2;
+    final static MigrationTopology DEFAULT_TOPOLOGY = MigrationTopology.RING;
+    final static boolean DEFAULT_JMX = false;
+    final static int DEFAULT_TRACE_SAMPLE = 1;
+    final static int DEFAULT_TRACE_RATE = 0;
+    final static int DEFAULT_TRACE_QUEUE = 1024;
+    final static int DEFAULT_CHECKPOINT_INTERVAL = 50;
+    final static int DEFAULT_STAGNATION = 0;
+    final static double DEFAULT_TARGET_DISTANCE = 0;
+    final static long DEFAULT_TIME_LIMIT_MILLIS = 0;
+    final static double DEFAULT_DIVERSITY = 0;
+    final static DiversityResponse DEFAULT_DIVERSITY_RESPONSE = DiversityResponse.RESTART;
+    final static int DEFAULT_FITNESS_CACHE = 0;
+    final static int DEFAULT_METRICS_DIVERSITY_INTERVAL = 10;
+    final static int DEFAULT_SERVE_QUEUE = 64;
+    final static int DEFAULT_SERVE_MAX_SITES = 10000;
+    final static int DEFAULT_SERVE_BATCH_SITES = 100;
+    final static long DEFAULT_SERVE_TIME_LIMIT_MILLIS = 10000;
+    final static int MAX_PRINTED_MAP_ROWS = 50;
+    final static int MAX_PRINTED_MAP_COLS = 200;
+    // Only used to place the sites and seed the random number generator of each trial
+    static Rng random = new Rng();
+
+    /**
+     * <p>A single replication of an algorithm. Each gets its own random number generator and output, so can run concurrently with other trials.</p>
+     */
+    private interface Trial {
+
+        /**
+         * 
+         * @param trial Starting at 1
+         * @param random
+         * @param out
+         * @return
+         * @throws Exception
+         */
+        double run(int trial, Rng random, PrintStream out) throws Exception;
+    }
 
     private static void printUsage() {
         System.err.println();
@@ -56,18 +115,87 @@ public class Main {
         System.err.println("    -h, --mapheight         Values: whole number        The height of the world map. Default is "+DEFAULT_HEIGHT+".");
         System.err.println("    -s, --sites             Values: whole number        The number of places salesman must visit. Default is "+DEFAULT_SITES+".");
         System.err.println("    -w, --mapwidth          Values: whole number        The width of the world map. Default is "+DEFAULT_WIDTH+".");
+        System.err.println("    --map                   Values: file name           Load the sites from a TSPLIB .tsp file (EUC_2D, CEIL_2D, ATT, GEO or EXPLICIT) or a .csv file of x,y coordinates instead of placing them at random. Replaces -s, -h and -w.");
+        System.err.println("    --optimaltour           Values: file name           TSPLIB .tour file with the optimal itinerary for the loaded map, so the gap of each algorithm to it can be reported.");
+        System.err.println("    --closedtour            Values: true or false       Whether the salesman returns to the first site, so total travel includes the edge back. Default is true for a loaded map and false otherwise.");
+        System.err.println();
+        System.err.println("PARAMETERS - PERFORMANCE");
+        System.err.println("    -d, --distancematrix    Values: true or false       Precompute distances between every pair of sites. Faster lookups, but uses (sites * sites * 8) bytes of memory. Default is "+DEFAULT_DISTANCE_MATRIX+".");
+        System.err.println("    --fitnesscache          Values: whole number        Number of itineraries each breeder remembers the distance of, so children that are copies aren't scored again. Practically never changes the results (copies are found by a 64-bit hash, which could collide). Default is " + DEFAULT_FITNESS_CACHE + " (off).");
+        System.err.println("    --seed                  Values: whole number        Seed for the map and every trial. The same seed and parameters (including --workers) give the same results, however many trials run at once. Default is a new seed each run, which is printed.");
+        System.err.println("                                                        Except: runs with -I above 1 or --coordinator differ from run to run, as when migrants arrive depends on timing, and so do trials stopped by --timelimit.");
+        System.err.println("    -t, --threads           Values: whole number        Number of trials to run at the same time. Output of each trial is printed once it finishes. Default is "+DEFAULT_THREADS+".");
+        System.err.println("    -W, --workers           Values: whole number        Number of threads used to breed and score the children of each generation within a single genetic trial. Default is "+DEFAULT_WORKERS+".");
         System.err.println();
         System.err.println("PARAMETERS - DISPLAY");
         System.err.println("    -P, --printparents      Values: true or false       Prints out all of the suriving solutions in each generation that end up in the mating pool. Default is "+DEFAULT_PRINT_BEST_OF_EACH_GENERATION+".");
         System.err.println("    -h, --help              Values: none                Print usage (you're looking at it!) and exit normally.");
         System.err.println();
         System.err.println("PARAMETERS - GENETIC ALGORITHM");
-        System.err.println("    -c, --crossoverrate     Values: 0.0 - 1.0           Likelihood for crossover between chromosomes for parent solutions. 1.0 means will always crossover; 0.0 means never. Default is "+DEFAULT_CROSS_OVER_RATE+".");
+        System.err.println("    -c, --crossoverrate     Values: 0.0 - 1.0           Likelihood for crossover between chromosomes for parent solutions. 1.0 means will always crossover; 0.0 means never. For uniform, the chance of switching parents at each site; for the rest, the chance of crossing the parents at all. Default is "+DEFAULT_CROSS_OVER_RATE+".");
+        System.err.println("    -x, --crossover         Values: uniform, ox, pmx,   How to combine parents. uniform switches parents at random sites and repairs duplicates; ox (order), pmx (partially mapped), erx (edge recombination)");
+        System.err.println("                                    erx or cycle        and cycle always produce valid itineraries. Default is "+DEFAULT_CROSSOVER.name().toLowerCase()+".");
         System.err.println("    -e, --elitism           Values: true or false       Whether to use elitism (best solution in each generation are added to next generation). Default is "+DEFAULT_ELITISM+".");
         System.err.println("    -g, --generations       Values: whole number        The total number of generations of solutions to use for each run. Default is "+DEFAULT_GENERATIONS+".");
         System.err.println("    -m, --matepercentage    Values: 0.0 - 1.0           Percentage of solutions for each generation that survive long enought to mate. Default is "+DEFAULT_PERCENTAGE_MATE+".");
+        System.err.println("    -S, --selection         Values: rank, tournament    How parents are picked from the mating pool. rank weights the fittest of n as n down to 1 for the least fit; tournament takes the fittest of a few at random;");
+        System.err.println("                                    or sus              sus (stochastic universal sampling) draws all parents of a generation at once with rank weights. Default is "+DEFAULT_SELECTION.name().toLowerCase()+".");
+        System.err.println("    -T, --tournamentsize    Values: whole number        Number of solutions in each tournament, for tournament selection. Default is "+DEFAULT_TOURNAMENT_SIZE+".");
         System.err.println("    -p, --population        Values: whole number        Population size of solutions for each generation. Default is "+DEFAULT_POPULATION_SIZE+".");
         System.err.println("    -u, --mutationrate      Values: 0.0 - 1.0           Rate of mutations for each data point in genetic algorithms. 1.0 will be entirely random. Default is "+DEFAULT_MUTATION_RATE+".");
+        System.err.println("    -U, --mutation          Values: reset, swap,        How to mutate children. reset overwrites a site and repairs the duplicate; swap, inversion (reverse a segment, like a 2-opt move),");
+        System.err.println("                                    inversion,          insertion (move a site) and scramble (shuffle a segment) never break the itinerary. Default is "+DEFAULT_MUTATION.name().toLowerCase()+".");
+        System.err.println("                                    insertion or scramble");
+        System.err.println("    -l, --localsearch       Values: none, elites or     Memetic mode: improve itineraries with 2-opt and Or-opt local search. elites improves the best of each generation; children improves every child. Default is "+DEFAULT_LOCAL_SEARCH.name().toLowerCase()+".");
+        System.err.println("                                    children");
+        System.err.println("    -k, --neighbors         Values: whole number        Number of nearest neighbors of each site that local search tries moves toward. Default is "+DEFAULT_NEIGHBORS+".");
+        System.err.println();
+        System.err.println("PARAMETERS - ISLAND MODEL");
+        System.err.println("    -I, --islands           Values: whole number        Number of populations to evolve at once, each on its own thread, swapping their best solutions every so often. Population size is per island. Default is "+DEFAULT_ISLANDS+".");
+        System.err.println("    -i, --migrationinterval Values: whole number        Generations between each exchange of solutions between islands. Default is "+DEFAULT_MIGRATION_INTERVAL+".");
+        System.err.println("    -M, --migrants          Values: whole number        Number of best solutions each island sends in each exchange. They replace the worst of the receiving island. Default is "+DEFAULT_MIGRANTS+".");
+        System.err.println("    -y, --topology          Values: ring or full        Which islands each island sends to: the next one (ring) or all others (full). Default is "+DEFAULT_TOPOLOGY.name().toLowerCase()+".");
+        System.err.println();
+        System.err.println("PARAMETERS - TRACE (-P)");
+        System.err.println("    --tracesample           Values: whole number        Print the best of only every this many generations. Default is " + DEFAULT_TRACE_SAMPLE + ".");
+        System.err.println("    --tracerate             Values: whole number        Print at most this many lines per second, dropping the rest. 0 for no limit. Default is " + DEFAULT_TRACE_RATE + ".");
+        System.err.println("    --tracequeue            Values: whole number        Number of lines that can wait to be printed by the background writer before the genetic algorithm waits for it. Default is " + DEFAULT_TRACE_QUEUE + ".");
+        System.err.println();
+        System.err.println("PARAMETERS - METRICS");
+        System.err.println("    --metrics               Values: file name           Write metrics for every generation of every genetic trial to this file: fitness, diversity, time spent in each phase and bytes allocated. CSV if the name ends with .csv, otherwise JSON lines.");
+        System.err.println("    --metricsdiversity      Values: whole number        Measure diversity (distinct itineraries and edge distance) of only every this many generations, as it takes about as long as scoring the population. 1 for every generation. Default is " + DEFAULT_METRICS_DIVERSITY_INTERVAL + ".");
+        System.err.println("    --jmx                   Values: true or false       Publish metrics for genetic trials as the JMX MBean " + GeneticAlgorithmMetrics.OBJECT_NAME + ". Default is " + DEFAULT_JMX + ".");
+        System.err.println();
+        System.err.println("PARAMETERS - CHECKPOINTS");
+        System.err.println("    --checkpoint            Values: file name           Save the state of the genetic trials to this file every so many generations, so the run can be resumed if killed. Trials must run one at a time, without islands.");
+        System.err.println("    --checkpointinterval    Values: whole number        Generations between checkpoints. Default is " + DEFAULT_CHECKPOINT_INTERVAL + ".");
+        System.err.println("    --resume                Values: file name           Continue the run saved in this checkpoint, with the same results it would have had. The map, genetic algorithm parameters and number of trials come from the checkpoint. Further checkpoints are saved to the same file.");
+        System.err.println();
+        System.err.println("PARAMETERS - DISTRIBUTED ISLAND MODEL");
+        System.err.println("    --coordinator           Values: port number         Run each genetic trial as an island model spread over separate processes, which connect on this port. Waits for as many processes as --islands.");
+        System.err.println("    --island                Values: host:port           Run as one island of a distributed island model, for the coordinator at host:port. All other parameters come from the coordinator.");
+        System.err.println();
+        System.err.println("PARAMETERS - EARLY TERMINATION");
+        System.err.println("    --stagnation            Values: whole number        Stop a genetic trial once its shortest distance hasn't improved for this many generations. Default is " + DEFAULT_STAGNATION + " (never).");
+        System.err.println("    --targetdistance        Values: decimal number      Stop a genetic trial once it finds an itinerary this short or shorter. Default is " + DEFAULT_TARGET_DISTANCE + " (no target).");
+        System.err.println("    --targetgap             Values: percent             Stop a genetic trial once it is within this percentage of the --optimaltour distance. Replaces --targetdistance.");
+        System.err.println("    --timelimit             Values: seconds             Stop a genetic trial once it has run this long, keeping the best found so far. Default is " + DEFAULT_TIME_LIMIT_MILLIS + " (no limit).");
+        System.err.println("    --diversity             Values: 0.0 to 1.0          Respond when the fraction of distinct itineraries in a generation falls below this. Default is " + DEFAULT_DIVERSITY + " (never).");
+        System.err.println("    --diversityresponse     Values: restart, mutate     restart replaces every itinerary but the best with a random one; mutate doubles the mutation rate until diversity recovers. Default is " + DEFAULT_DIVERSITY_RESPONSE.name().toLowerCase() + ".");
+        System.err.println("                                                        Islands check and stop on their own. Stagnation and diversity can't be used with checkpoints.");
+        System.err.println();
+        System.err.println("PARAMETERS - SWEEPS");
+        System.err.println("    --sweep                 Values: file name           Instead of the trials, run every configuration in this spec on the same map and rank them. Each line is a parameter's long name and its values: population = 20, 40. search = random, with samples = n, draws");
+        System.err.println("                                                        configurations instead, and values can be a range: mutationrate = 0.01..0.2. replications = n sets the runs of each. Runs -t at a time; unswept parameters come from the command line.");
+        System.err.println("    --sweepcache            Values: file name           Results of finished sweep runs, so an interrupted or extended sweep only runs what is missing. Use --seed to reuse them. Default is the spec file name with .cache added.");
+        System.err.println("                                                        Runs with islands or --timelimit are cached too, but aren't reproducible, so running them again would give a different result.");
+        System.err.println();
+        System.err.println("PARAMETERS - SOLVE SERVICE");
+        System.err.println("    --serve                 Values: [host:]port         Instead of the trials, solve the sites POSTed to http://host:port/solve (as JSON or binary) until killed. Host defaults to the loopback address. -t sets the solves run at once,");
+        System.err.println("                                                        --timelimit the longest a request can ask for (default " + (DEFAULT_SERVE_TIME_LIMIT_MILLIS / 1000) + " s), and the other genetic algorithm parameters are the defaults for requests. GET /status for counts.");
+        System.err.println("    --servequeue            Values: whole number        Requests admitted beyond those being solved. Past that, requests get 503 straight away. Default is " + DEFAULT_SERVE_QUEUE + ".");
+        System.err.println("    --servemaxsites         Values: whole number        Larger requests get 413. Default is " + DEFAULT_SERVE_MAX_SITES + ".");
+        System.err.println("    --servebatchsites       Values: whole number        Requests with at most this many sites are batched, up to " + SolveService.MAX_BATCH + " to a thread, while the threads are busy. Default is " + DEFAULT_SERVE_BATCH_SITES + ".");
         System.err.println();
         System.err.println("RETURN CODES");
         System.err.println("    0: Exitted normally");
@@ -96,32 +224,159 @@ public class Main {
         boolean printBestOfEachGeneration = DEFAULT_PRINT_BEST_OF_EACH_GENERATION;
         int timesRunGenetic = DEFAULT_TIMES_RUN_GENETIC;
         int timesRunRandom = DEFAULT_TIMES_RUN_RANDOM;
+        boolean distanceMatrix = DEFAULT_DISTANCE_MATRIX;
+        int threads = DEFAULT_THREADS;
+        int workers = DEFAULT_WORKERS;
+        CrossoverOperator crossover = DEFAULT_CROSSOVER;
+        MutationOperator mutation = DEFAULT_MUTATION;
+        LocalSearchMode localSearch = DEFAULT_LOCAL_SEARCH;
+        int neighbors = DEFAULT_NEIGHBORS;
+        int fitnessCache = DEFAULT_FITNESS_CACHE;
+        int metricsDiversityInterval = DEFAULT_METRICS_DIVERSITY_INTERVAL;
+        SelectionScheme selection = DEFAULT_SELECTION;
+        int tournamentSize = DEFAULT_TOURNAMENT_SIZE;
+        int islands = DEFAULT_ISLANDS;
+        int migrationInterval = DEFAULT_MIGRATION_INTERVAL;
+        int migrants = DEFAULT_MIGRANTS;
+        MigrationTopology topology = DEFAULT_TOPOLOGY;
+        int coordinatorPort = -1;
+        String coordinatorAddress = null;
+        String metricsFile = null;
+        boolean jmx = DEFAULT_JMX;
+        int traceSample = DEFAULT_TRACE_SAMPLE;
+        int traceRate = DEFAULT_TRACE_RATE;
+        int traceQueue = DEFAULT_TRACE_QUEUE;
+        String checkpointFile = null;
+        int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+        String resumeFile = null;
+        String mapFile = null;
+        String optimalTourFile = null;
+        Boolean closedTour = null;
+        Long seed = null;
+        String sweepFile = null;
+        String sweepCacheFile = null;
+        String serveAddress = null;
+        int serveQueue = DEFAULT_SERVE_QUEUE;
+        int serveMaxSites = DEFAULT_SERVE_MAX_SITES;
+        int serveBatchSites = DEFAULT_SERVE_BATCH_SITES;
+        int stagnation = DEFAULT_STAGNATION;
+        double targetDistance = DEFAULT_TARGET_DISTANCE;
+        double targetGap = Double.NaN;
+        long timeLimitMillis = DEFAULT_TIME_LIMIT_MILLIS;
+        double diversity = DEFAULT_DIVERSITY;
+        DiversityResponse diversityResponse = DEFAULT_DIVERSITY_RESPONSE;
 
         try {
             for (int i = 0; i < args.length; i++) {
                 if (args[i].equals("-h") || args[i].equals("--help")) {
                     printUsage();
                     System.exit(0);
+                } else if (args[i].equals("-G") || args[i].equals("--geneticreps")) {
+                    timesRunGenetic = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-R") || args[i].equals("--randomreps")) {
+                    timesRunRandom = Integer.parseInt(args[++i]);
                 } else if (args[i].equals("-s") || args[i].equals("--sites")) {
-                    sites = Integer.parseInt(args[i + 1]);
+                    sites = Integer.parseInt(args[++i]);
                 } else if (args[i].equals("-h") || args[i].equals("--mapheight")) {
-                    height = Integer.parseInt(args[i + 1]);
+                    height = Integer.parseInt(args[++i]);
                 } else if (args[i].equals("-w") || args[i].equals("--mapwidth")) {
-                    width = Integer.parseInt(args[i + 1]);
+                    width = Integer.parseInt(args[++i]);
                 } else if (args[i].equals("-p") || args[i].equals("--population")) {
-                    populationSize = Integer.parseInt(args[i + 1]);
+                    populationSize = Integer.parseInt(args[++i]);
                 } else if (args[i].equals("-g") || args[i].equals("--generations")) {
-                    generations = Integer.parseInt(args[i + 1]);
+                    generations = Integer.parseInt(args[++i]);
                 } else if (args[i].equals("-m") || args[i].equals("--matepercentage")) {
-                    percentageMate = Double.parseDouble(args[i + 1]);
+                    percentageMate = Double.parseDouble(args[++i]);
                 } else if (args[i].equals("-c") || args[i].equals("--crossoverrate")) {
-                    crossOverRate = Double.parseDouble(args[i + 1]);
+                    crossOverRate = Double.parseDouble(args[++i]);
                 } else if (args[i].equals("-u") || args[i].equals("--mutationrate")) {
-                    mutationRate = Double.parseDouble(args[i + 1]);
+                    mutationRate = Double.parseDouble(args[++i]);
                 } else if (args[i].equals("-e") || args[i].equals("--elitism")) {
-                    elitism = Boolean.parseBoolean(args[i + 1]);
+                    elitism = Boolean.parseBoolean(args[++i]);
                 } else if (args[i].equals("-P") || args[i].equals("--printparents")) {
-                    printBestOfEachGeneration = Boolean.parseBoolean(args[i + 1]);
+                    printBestOfEachGeneration = Boolean.parseBoolean(args[++i]);
+                } else if (args[i].equals("-d") || args[i].equals("--distancematrix")) {
+                    distanceMatrix = Boolean.parseBoolean(args[++i]);
+                } else if (args[i].equals("-t") || args[i].equals("--threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-W") || args[i].equals("--workers")) {
+                    workers = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-x") || args[i].equals("--crossover")) {
+                    crossover = CrossoverOperator.parse(args[++i]);
+                } else if (args[i].equals("-U") || args[i].equals("--mutation")) {
+                    mutation = MutationOperator.parse(args[++i]);
+                } else if (args[i].equals("-l") || args[i].equals("--localsearch")) {
+                    localSearch = LocalSearchMode.parse(args[++i]);
+                } else if (args[i].equals("-k") || args[i].equals("--neighbors")) {
+                    neighbors = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-S") || args[i].equals("--selection")) {
+                    selection = SelectionScheme.parse(args[++i]);
+                } else if (args[i].equals("-T") || args[i].equals("--tournamentsize")) {
+                    tournamentSize = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-I") || args[i].equals("--islands")) {
+                    islands = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-i") || args[i].equals("--migrationinterval")) {
+                    migrationInterval = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-M") || args[i].equals("--migrants")) {
+                    migrants = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-y") || args[i].equals("--topology")) {
+                    topology = MigrationTopology.parse(args[++i]);
+                } else if (args[i].equals("--fitnesscache")) {
+                    fitnessCache = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--tracesample")) {
+                    traceSample = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--tracerate")) {
+                    traceRate = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--tracequeue")) {
+                    traceQueue = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--checkpoint")) {
+                    checkpointFile = args[++i];
+                } else if (args[i].equals("--checkpointinterval")) {
+                    checkpointInterval = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--resume")) {
+                    resumeFile = args[++i];
+                } else if (args[i].equals("--sweep")) {
+                    sweepFile = args[++i];
+                } else if (args[i].equals("--sweepcache")) {
+                    sweepCacheFile = args[++i];
+                } else if (args[i].equals("--stagnation")) {
+                    stagnation = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--targetdistance")) {
+                    targetDistance = Double.parseDouble(args[++i]);
+                } else if (args[i].equals("--targetgap")) {
+                    targetGap = Double.parseDouble(args[++i]);
+                } else if (args[i].equals("--timelimit")) {
+                    timeLimitMillis = Math.round(Double.parseDouble(args[++i]) * 1000);
+                } else if (args[i].equals("--diversity")) {
+                    diversity = Double.parseDouble(args[++i]);
+                } else if (args[i].equals("--diversityresponse")) {
+                    diversityResponse = DiversityResponse.parse(args[++i]);
+                } else if (args[i].equals("--serve")) {
+                    serveAddress = args[++i];
+                } else if (args[i].equals("--servequeue")) {
+                    serveQueue = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--servemaxsites")) {
+                    serveMaxSites = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--servebatchsites")) {
+                    serveBatchSites = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--seed")) {
+                    seed = Long.parseLong(args[++i]);
+                } else if (args[i].equals("--map")) {
+                    mapFile = args[++i];
+                } else if (args[i].equals("--optimaltour")) {
+                    optimalTourFile = args[++i];
+                } else if (args[i].equals("--closedtour")) {
+                    closedTour = Boolean.parseBoolean(args[++i]);
+                } else if (args[i].equals("--metrics")) {
+                    metricsFile = args[++i];
+                } else if (args[i].equals("--metricsdiversity")) {
+                    metricsDiversityInterval = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--jmx")) {
+                    jmx = Boolean.parseBoolean(args[++i]);
+                } else if (args[i].equals("--coordinator")) {
+                    coordinatorPort = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--island")) {
+                    coordinatorAddress = args[++i];
                 } else {
                     System.err.println("Unrecognized parameter: " + args[i]);
                     printUsage();
@@ -129,30 +384,216 @@ public class Main {
                 }
             }
 
+            GeneticAlgorithmConfig parsedConfig = new GeneticAlgorithmConfig();
+            parsedConfig.setPopulationSize(populationSize);
+            parsedConfig.setPercentageMate(percentageMate);
+            parsedConfig.setGenerations(generations);
+            parsedConfig.setElitism(elitism);
+            parsedConfig.setCrossOverRate(crossOverRate);
+            parsedConfig.setMutationRate(mutationRate);
+            parsedConfig.setPrintBestOfEachGeneration(printBestOfEachGeneration);
+            parsedConfig.setWorkers(workers);
+            parsedConfig.setCrossover(crossover);
+            parsedConfig.setMutation(mutation);
+            parsedConfig.setLocalSearch(localSearch);
+            parsedConfig.setNeighbors(neighbors);
+            parsedConfig.setSelection(selection);
+            parsedConfig.setTournamentSize(tournamentSize);
+            parsedConfig.setIslands(islands);
+            parsedConfig.setMigrationInterval(migrationInterval);
+            parsedConfig.setMigrants(migrants);
+            parsedConfig.setTopology(topology);
+            parsedConfig.setStagnationGenerations(stagnation);
+            parsedConfig.setTargetDistance(targetDistance);
+            parsedConfig.setTimeLimitMillis(timeLimitMillis);
+            parsedConfig.setDiversityThreshold(diversity);
+            parsedConfig.setDiversityResponse(diversityResponse);
+            parsedConfig.setFitnessCacheSize(fitnessCache);
+            parsedConfig.setMetricsDiversityInterval(metricsDiversityInterval);
+            if (metricsDiversityInterval < 1) {
+                throw new RuntimeException("--metricsdiversity must be at least 1, instead found: " + metricsDiversityInterval);
+            }
 
+            if (coordinatorAddress != null) {
+                int colon = coordinatorAddress.lastIndexOf(':');
+                IslandWorker.run(coordinatorAddress.substring(0, colon), Integer.parseInt(coordinatorAddress.substring(colon + 1)), System.out);
+                System.exit(0);
+            }
+
+            if (serveAddress != null) {
+                if (resumeFile != null || checkpointFile != null || sweepFile != null || coordinatorPort != -1 || mapFile != null) {
+                    throw new RuntimeException("--serve solves the sites it is sent, so can't be combined with a map, checkpoints, sweeps or a coordinator");
+                }
+                // Keeps running on the service's threads
+                runService(parsedConfig, serveAddress, threads, serveQueue, serveMaxSites, serveBatchSites);
+                return;
+            }
 
-            final SalesmanMap map = SalesmanMap.generate(sites, height, width);
+            // The checkpoint replaces the map, parameters and number of trials
+            Checkpointer resumed = null;
+            if (resumeFile != null) {
+                if (seed != null) {
+                    throw new RuntimeException("--seed can't be used with --resume, which carries on from the checkpoint's generator");
+                }
+                resumed = Checkpointer.resume(new File(resumeFile), checkpointInterval);
+                sites = resumed.getMap().getNumSites();
+                height = resumed.getMap().getHeight();
+                width = resumed.getMap().getWidth();
+                timesRunGenetic = resumed.getGeneticTrials();
+                timesRunRandom = resumed.getRandomTrials();
+                random = resumed.getSeedGenerator();
+            } else {
+                if (seed == null) {
+                    seed = new Rng().nextLong();
+                }
+                random = new Rng(seed);
+            }
+
+            final SalesmanMap map;
+            if (resumed != null) {
+                map = resumed.getMap();
+            } else if (mapFile != null) {
+                map = MapLoader.load(new File(mapFile));
+                sites = map.getNumSites();
+                height = map.getHeight();
+                width = map.getWidth();
+            } else {
+                map = SalesmanMap.generate(sites, height, width, random.split());
+            }
+            if (closedTour != null && resumed == null) {
+                map.setClosedTour(closedTour);
+            }
+            if (distanceMatrix && !map.hasDistanceMatrix()) {
+                map.precomputeDistances();
+            }
+
+            double optimalDistance = Double.NaN;
+            if (optimalTourFile != null) {
+                optimalDistance = Itineraries.getTotalTravel(MapLoader.loadTour(new File(optimalTourFile), map.getNumSites()), map);
+            }
+            if (!Double.isNaN(targetGap)) {
+                if (Double.isNaN(optimalDistance)) {
+                    throw new RuntimeException("--targetgap requires --optimaltour");
+                }
+                targetDistance = optimalDistance * (1 + targetGap / 100);
+                parsedConfig.setTargetDistance(targetDistance);
+            }
 
             // Print out the map
             System.out.println();
             System.out.println("DESCRIPTION: The salesman must visit all " + sites + " sites. We want to create an itinerary that is as sort as possible, contrasting the results between genetic algorithmic approach and random walks.");
             System.out.println();
-            System.out.println("The salesman starts at point 'a' on the following map:");
-            System.out.println(map);
+            if (seed != null) {
+                System.out.println("Seed: " + seed + " (pass --seed " + seed + " to repeat this run)");
+            }
+            if (mapFile != null) {
+                System.out.println("Loaded the sites from " + mapFile + ", with " + map.getMetric().name() + " distances.");
+            }
+            if (map.isClosedTour()) {
+                System.out.println("The salesman returns to the first site at the end of the itinerary.");
+            }
+            if (!Double.isNaN(optimalDistance)) {
+                System.out.println("The optimal itinerary has a total travel of " + optimalDistance + ".");
+            }
+            if (seed != null || mapFile != null || map.isClosedTour() || !Double.isNaN(optimalDistance)) {
+                System.out.println();
+            }
+            if (height <= MAX_PRINTED_MAP_ROWS && width <= MAX_PRINTED_MAP_COLS) {
+                System.out.println("The salesman starts at point 'a' on the following map:");
+                System.out.println(map);
+            } else {
+                System.out.println("The salesman starts at point 'a'. The map is too large to print, so showing only the top-left " + MAX_PRINTED_MAP_ROWS + " x " + MAX_PRINTED_MAP_COLS + " corner:");
+                System.out.println(map.toString(false, 0, 0, MAX_PRINTED_MAP_ROWS, MAX_PRINTED_MAP_COLS));
+            }
 
             List<Double> distances = new ArrayList(timesRunGenetic + timesRunRandom);
             Map<Double, String> descriptions = new HashMap();
 
+            if (sweepFile != null) {
+                if (resumed != null || checkpointFile != null || coordinatorPort != -1) {
+                    throw new RuntimeException("Sweeps can't be combined with checkpoints or a coordinator");
+                }
+                runSweep(map, parsedConfig, new File(sweepFile), new File(sweepCacheFile != null ? sweepCacheFile : sweepFile + ".cache"), threads);
+                System.exit(0);
+            }
+
+            final GeneticAlgorithmConfig config = resumed != null ? resumed.getConfig() : parsedConfig;
+            generations = config.getGenerations();
+            printBestOfEachGeneration = config.isPrintBestOfEachGeneration();
+            workers = config.getWorkers();
+
+            Checkpointer checkpointer = resumed;
+            if (checkpointer != null || checkpointFile != null) {
+                if (threads > 1 || islands > 1 || coordinatorPort != -1) {
+                    throw new RuntimeException("Checkpoints require trials to run one at a time, without islands");
+                }
+                // Neither the generation of the last improvement nor a raised mutation rate is saved
+                if (config.getStagnationGenerations() > 0 || config.getDiversityThreshold() > 0) {
+                    throw new RuntimeException("Checkpoints can't be used with --stagnation or --diversity");
+                }
+                if (checkpointer == null) {
+                    checkpointer = new Checkpointer(new File(checkpointFile), checkpointInterval, map, config, timesRunGenetic, timesRunRandom, random);
+                }
+            }
+            final Checkpointer finalCheckpointer = checkpointer;
+
+            ExecutorService pool = null;
+            if (threads > 1) {
+                pool = Executors.newFixedThreadPool(threads);
+            }
+
+            // Shared by all genetic trials to breed children concurrently
+            ExecutorService breedingPool = null;
+            if (workers > 1) {
+                breedingPool = Executors.newFixedThreadPool(workers);
+            }
+            final ExecutorService finalBreedingPool = breedingPool;
+
+            // Genetic trials run on island processes instead of here
+            IslandCoordinator coordinator = null;
+            if (coordinatorPort != -1) {
+                coordinator = new IslandCoordinator(coordinatorPort, islands);
+                coordinator.awaitIslands(System.out);
+            }
+            final IslandCoordinator finalCoordinator = coordinator;
+
+            MetricsSink metricsSink = null;
+            if (metricsFile != null) {
+                metricsSink = new MetricsSink(new File(metricsFile));
+            }
+            TraceWriter traceWriter = null;
+            if (printBestOfEachGeneration) {
+                traceWriter = new TraceWriter(traceQueue, traceSample, traceRate);
+            }
+            final TraceWriter finalTraceWriter = traceWriter;
+
+            final MetricsListener metricsListener = createMetricsListener(metricsSink, jmx ? GeneticAlgorithmMetrics.register() : null);
+
             double geneticTotal = 0;
             List<Double> geneticScores = new ArrayList(timesRunGenetic);
 
-            // Run all the genetic trials
-            for (int i = 0; i < timesRunGenetic; i++) {
-                System.out.println();
-                System.out.println(">>> RUNNING GENETIC TRIAL #" + (i + 1) + " out of " + timesRunGenetic + " <<<");
-                double val = runTestWithGeneticAlgorithm(map, populationSize, percentageMate, generations, elitism, crossOverRate, mutationRate, printBestOfEachGeneration);
-                System.out.println("After " + generations + " generations, found shortest distance of: " + val);
+            // Run all the genetic trials. Those that stop early record how many generations they ran.
+            final int[] geneticGenerations = new int[timesRunGenetic];
+            Arrays.fill(geneticGenerations, generations);
+            double[] geneticResults = runTrials("GENETIC", timesRunGenetic, geneticGenerations, pool, traceWriter, new Trial() {
 
+                public double run(int trial, Rng random, PrintStream out) throws Exception {
+                    if (finalCoordinator != null) {
+                        return finalCoordinator.runTrial(map, config, random);
+                    }
+                    if (finalCheckpointer == null) {
+                        return runTestWithGeneticAlgorithm(map, config, finalBreedingPool, random, out, finalTraceWriter, metricsListener, null, trial, geneticGenerations);
+                    }
+                    if (finalCheckpointer.isTrialFinished(trial)) {
+                        out.println("  Finished before the checkpoint was saved");
+                        return finalCheckpointer.getResult(trial);
+                    }
+                    double distance = runTestWithGeneticAlgorithm(map, config, finalBreedingPool, finalCheckpointer.getGenerator(trial, random), out, finalTraceWriter, metricsListener, finalCheckpointer, trial, geneticGenerations);
+                    finalCheckpointer.trialFinished(trial, distance);
+                    return distance;
+                }
+            });
+            for (double val : geneticResults) {
                 distances.add(val);
                 descriptions.put(val, "Genetic trial");
 
@@ -164,12 +605,15 @@ public class Main {
             List<Double> randomScores = new ArrayList(timesRunRandom);
 
             // Run all the random trials
-            for (int i = 0; i < timesRunRandom; i++) {
-                System.out.println();
-                System.out.println(">>> RUNNING RANDOM TRIAL #" + (i + 1) + " out of " + timesRunRandom + " <<<");
-                double val = runTestWithRandom(map, populationSize, generations, printBestOfEachGeneration);
-                System.out.println("After " + generations + " generations, found shortest distance of: " + val);
+            final int[] randomGenerations = new int[timesRunRandom];
+            Arrays.fill(randomGenerations, generations);
+            double[] randomResults = runTrials("RANDOM", timesRunRandom, randomGenerations, pool, traceWriter, new Trial() {
 
+                public double run(int trial, Rng random, PrintStream out) throws InterruptedException {
+                    return runTestWithRandom(map, config.getPopulationSize(), config.getGenerations(), config.isPrintBestOfEachGeneration(), random, out, finalTraceWriter);
+                }
+            });
+            for (double val : randomResults) {
                 distances.add(val);
                 descriptions.put(val, "Random trial");
 
@@ -178,6 +622,29 @@ public class Main {
                 randomScores.add(val);
             }
 
+            if (pool != null) {
+                pool.shutdown();
+            }
+            if (breedingPool != null) {
+                breedingPool.shutdown();
+            }
+            if (coordinator != null) {
+                coordinator.shutdown();
+            }
+            if (metricsSink != null) {
+                metricsSink.close();
+            }
+            if (checkpointer != null) {
+                checkpointer.close();
+            }
+            if (traceWriter != null) {
+                traceWriter.close();
+                if (traceWriter.getDropped() > 0) {
+                    System.out.println();
+                    System.out.println("Dropped " + traceWriter.getDropped() + " lines of the trace to stay under " + traceRate + " lines per second.");
+                }
+            }
+
             Collections.sort(distances);
 
             System.out.println();
@@ -253,6 +720,19 @@ public class Main {
                 System.out.println("    * Standard deviation: " + standardDev);
 
             }
+
+            if (!Double.isNaN(optimalDistance)) {
+                System.out.println();
+                System.out.println("--- Gap to the optimal total travel of " + optimalDistance + " ---:");
+                if (timesRunGenetic > 0) {
+                    System.out.println("    * Best genetic: " + formatGap(Collections.min(geneticScores), optimalDistance));
+                    System.out.println("    * Average genetic: " + formatGap(geneticTotal / (double) timesRunGenetic, optimalDistance));
+                }
+                if (timesRunRandom > 0) {
+                    System.out.println("    * Best random: " + formatGap(Collections.min(randomScores), optimalDistance));
+                    System.out.println("    * Average random: " + formatGap(randomTotal / (double) timesRunRandom, optimalDistance));
+                }
+            }
             System.out.println();
             System.exit(0);
         } catch (Exception e) {
@@ -262,350 +742,226 @@ public class Main {
         }
     }
 
-    private static double runTestWithGeneticAlgorithm(SalesmanMap map, int populationSize, double percentageMate, int generations, boolean elitism, double crossOverRate, double mutationRate, boolean printBestOfEachGeneration) {
-
-        Map<Double, byte[]> itineraryPopulation = new HashMap();
-        List<Double> totalDistances = new ArrayList(populationSize);
+    /**
+     * 
+     * @param distance
+     * @param optimalDistance
+     * @return How much longer distance is than optimal, as a percentage
+     */
+    private static String formatGap(double distance, double optimalDistance) {
+        return String.format("%.2f%%", 100.0 * (distance - optimalDistance) / optimalDistance);
+    }
 
-        // How many of the fitest get to mate?
-        final int numFitestToMate = (int) Math.round(populationSize * percentageMate);
+    /**
+     * <p>Run the trials one after the other on this thread, or concurrently if given a pool. Either way, the output of each trial is printed in order.</p>
+     * @param name
+     * @param count
+     * @param generations Generations each trial ran, read after it finishes
+     * @param pool Null to run on this thread
+     * @param traceWriter Flushed after each trial so the trace comes before its result. Null if not tracing.
+     * @param trial
+     * @return The shortest distance found by each trial
+     * @throws Exception
+     */
+    private static double[] runTrials(String name, final int count, int[] generations, ExecutorService pool, TraceWriter traceWriter, final Trial trial) throws Exception {
+        double[] results = new double[count];
 
-        POPULATION:
-        for (int pop = 0; pop < populationSize; pop++) {
-            byte[] itinerary = generateRandomItinerary(map.getLastSite());
-            double distance = getTotalTravel(itinerary, map);
-            itineraryPopulation.put(distance, itinerary);
-            totalDistances.add(distance);
+        // Seed every trial up front, so each trial always gets the same seed regardless of when it runs
+        final Rng[] randoms = new Rng[count];
+        for (int i = 0; i < count; i++) {
+            randoms[i] = random.split();
         }
 
-        byte[] bestSolution = null;
-        double bestSolutionDistance = -1;
-
-        GENERATIONS:
-        for (int gen = 0; gen < generations; gen++) {
-
-            // STEP 1: Get the fitest together
-            Collections.sort(totalDistances);
-            List<byte[]> fitestItineraries = new ArrayList(numFitestToMate);
-
-            for (int i = 0; i < numFitestToMate; i++) {
-                Double distance = totalDistances.get(i);
-                byte[] itinerary = itineraryPopulation.get(distance);
-
-                // Each generation, reset the best!
-                if (i == 0) {
-                    if (printBestOfEachGeneration) {
-                        System.out.println("  Best solution in generation #" + gen + ": " + byteArrayToString(itinerary) + " -> " + distance);
-                    }
-                    bestSolution = itinerary;
-                    bestSolutionDistance = distance;
+        if (pool == null) {
+            for (int i = 0; i < count; i++) {
+                System.out.println();
+                System.out.println(">>> RUNNING " + name + " TRIAL #" + (i + 1) + " out of " + count + " <<<");
+                results[i] = trial.run(i + 1, randoms[i], System.out);
+                if (traceWriter != null) {
+                    traceWriter.flush();
                 }
-                fitestItineraries.add(itinerary);
-            }
-
-            // STEP 2: Mate to generate next population
-            itineraryPopulation.clear();
-            totalDistances.clear();
-
-            int pop = 0;
-
-            // If using elitism, automatically put best solution from previous generation in next
-            if (elitism) {
-                pop = 1;
-                itineraryPopulation.put(bestSolutionDistance, bestSolution);
-                totalDistances.add(bestSolutionDistance);
-            }
-
-            POPULATION:
-            for (; pop < populationSize; pop++) {
-                List<byte[]> parents = randomlyPickTwoParents(fitestItineraries);
-                byte[] itinerary = mate(parents.get(0), parents.get(1), crossOverRate, mutationRate);
-                double distance = getTotalTravel(itinerary, map);
-                itineraryPopulation.put(distance, itinerary);
-                totalDistances.add(distance);
+                System.out.println("After " + generations[i] + " generations, found shortest distance of: " + results[i]);
             }
+            return results;
         }
 
-        return bestSolutionDistance;
-    }
-
-    private static double runTestWithRandom(SalesmanMap map, int populationSize, int generations, boolean printBestOfEachGeneration) {
-        Map<Double, byte[]> itineraryPopulation = new HashMap();
-        List<Double> totalDistances = new ArrayList(populationSize);
-
-        byte[] bestSolution = null;
-        double bestSolutionDistance = -1;
-
-        GENERATIONS:
-        for (int gen = 0; gen < generations; gen++) {
-            POPULATION:
-            for (int pop = 0; pop < populationSize; pop++) {
-                byte[] itinerary = generateRandomItinerary(map.getLastSite());
-                double distance = getTotalTravel(itinerary, map);
+        List<Future<Double>> futures = new ArrayList<Future<Double>>(count);
+        final ByteArrayOutputStream[] outputs = new ByteArrayOutputStream[count];
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            outputs[i] = new ByteArrayOutputStream();
+            futures.add(pool.submit(new Callable<Double>() {
 
-                if (bestSolutionDistance == -1 || distance < bestSolutionDistance) {
-                    bestSolutionDistance = distance;
-                    bestSolution = itinerary;
+                public Double call() throws Exception {
+                    return trial.run(index + 1, randoms[index], new PrintStream(outputs[index]));
                 }
-
-                itineraryPopulation.put(distance, itinerary);
-                totalDistances.add(distance);
-            }
-            if (printBestOfEachGeneration) {
-                System.out.println("  Best solution in generation #" + gen + ": " + byteArrayToString(bestSolution) + " -> " + bestSolutionDistance);
-            }
-        }
-
-        return bestSolutionDistance;
-    }
-
-    /**
-     * <p>Picks two parents using rank selection.</p>
-     * <p>Rank selection basically weight the fittest as n, next as n-1, all the way down to least fitest as 1, when there are n items in matingPool. Then pick them randomly based on their relative weights (higher ranks more likely to be chosen).</p>
-     * @param matingPool
-     * @return
-     */
-    private static List<byte[]> randomlyPickTwoParents(List<byte[]> matingPool) {
-
-        if (matingPool.size() < 2) {
-            throw new RuntimeException("Requires a mating pool of size 2, instead found: " + matingPool.size());
-        }
-
-        List<byte[]> parents = new ArrayList();
-
-        int length = matingPool.size();
-        int totalWeight = 0;
-
-        // Calculate total weight
-        for (int i = length; i >= 1; i--) {
-            totalWeight += i;
+            }));
         }
 
-        List<Integer> chosenIndices = new ArrayList();
-        while (parents.size() < 2) {
-            int randomVal = random.nextInt(totalWeight);
-
-            int weight = 0;
-            // Find selected parent
-            FIND_PARENT:
-            for (int i = length - 1; i >= 1; i--) {
-                weight += i;
-                if (randomVal < weight) {
-                    if (!chosenIndices.contains(i)) {
-                        // Add the parent
-                        chosenIndices.add(i);
-                        parents.add(matingPool.get(i));
-                        break FIND_PARENT;
-                    } else {
-                        // Already selected that parent -- try again
-                        break FIND_PARENT;
-                    }
+        for (int i = 0; i < count; i++) {
+            try {
+                results[i] = futures.get(i).get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
                 }
+                throw e;
             }
+            if (traceWriter != null) {
+                traceWriter.flush();
+            }
+            System.out.println();
+            System.out.println(">>> RUNNING " + name + " TRIAL #" + (i + 1) + " out of " + count + " <<<");
+            System.out.print(outputs[i].toString());
+            System.out.println("After " + generations[i] + " generations, found shortest distance of: " + results[i]);
         }
 
-        if (parents.size() != 2) {
-            throw new RuntimeException("ASSERTION ERROR: Expected two parents, found: " + parents.size());
-        }
-
-        return parents;
+        return results;
     }
 
     /**
      * 
-     * @param parent1
-     * @param parent2
-     * @param crossOverRate
-     * @param mutationRate
+     * @param map
+     * @param config
+     * @param breedingPool
+     * @param random
+     * @param out
+     * @param traceWriter May be null
+     * @param metricsListener May be null
+     * @param checkpointer May be null. Not supported with islands.
+     * @param trial Starting at 1
+     * @param generationsRun Element trial - 1 is set to the generations the trial ran
      * @return
+     * @throws Exception
      */
-    private static byte[] mate(byte[] parent1, byte[] parent2, double crossOverRate, double mutationRate) {
-        if (parent1.length != parent2.length) {
-            throw new RuntimeException("ASSERTION FAILED: Expected both parents to be same size. Instead, parent1.length<" + parent1.length + "> != parent2.length<" + parent2.length + ">");
-        }
-        byte[] child = new byte[parent1.length];
-
-        // Pick a parent randomly
-        boolean isParent1 = random.nextBoolean();
-
-        // Start encoding from both parents
-        for (int index = 0; index < parent1.length; index++) {
-
-            if (isParent1) {
-                child[index] = parent1[index];
-            } else {
-                child[index] = parent2[index];
-            }
-
-            // By chance, crossover
-            if (random.nextFloat() < crossOverRate) {
-                isParent1 = !isParent1;
+    private static double runTestWithGeneticAlgorithm(SalesmanMap map, GeneticAlgorithmConfig config, ExecutorService breedingPool, Rng random, PrintStream out, TraceWriter traceWriter, MetricsListener metricsListener, Checkpointer checkpointer, int trial, int[] generationsRun) throws Exception {
+        final String run = "trial " + trial;
+        double distance;
+        String stopReason;
+        int restarts;
+        if (config.getIslands() > 1) {
+            IslandModel islandModel = new IslandModel(map, config, breedingPool, random, out);
+            islandModel.setTraceWriter(traceWriter);
+            islandModel.setMetricsListener(metricsListener, run);
+            distance = islandModel.run();
+            generationsRun[trial - 1] = islandModel.getGenerationsRun();
+            stopReason = islandModel.getStopReason();
+            restarts = islandModel.getRestarts();
+        } else {
+            GeneticAlgorithm algorithm = new GeneticAlgorithm(map, config, breedingPool, random, out);
+            algorithm.setTraceWriter(traceWriter);
+            algorithm.setMetricsListener(metricsListener, run);
+            if (checkpointer != null) {
+                checkpointer.attach(algorithm, trial);
             }
+            distance = algorithm.run();
+            generationsRun[trial - 1] = algorithm.getGenerationsRun();
+            stopReason = algorithm.getStopReason();
+            restarts = algorithm.getRestarts();
         }
-
-        checkArrayForIntegrity(child);
-
-        // Do some random mutations
-        for (int index = 0; index < child.length; index++) {
-            double r = random.nextFloat();
-
-            // The reason we double the random vaule is because in the process of checking for integrity,
-            // half chance go back to way was before!
-            if (r < mutationRate * 2) {
-                byte mutationValue = (byte) random.nextInt(parent1.length);
-                child[index] = mutationValue;
-                checkArrayForIntegrity(child);
-            }
+        if (traceWriter != null && (stopReason != null || restarts > 0)) {
+            // So the notes come after the trace
+            traceWriter.flush();
         }
-
-
-        return child;
-    }
-
-    /**
-     * 
-     * @param child
-     */
-    private static void checkArrayForIntegrity(byte[] child) {
-        // There will likely be duplicates and some without copies due to crossover. Fix this.
-        SWAP_TWO_SITES:
-        while (true) {
-            int[] instanceCount = new int[child.length];
-            for (int i = 0; i < instanceCount.length; i++) {
-                instanceCount[i] = 0;
-            }
-
-            for (byte b : child) {
-                instanceCount[b]++;
-            }
-
-            byte byteWithZeroInstances = -1;
-            byte byteWithTwoInstances = -1;
-
-            FIND_BYTES_TO_SWAP:
-            for (byte index = 0; index < instanceCount.length; index++) {
-                if (instanceCount[index] == 0) {
-                    if (byteWithZeroInstances == -1) {
-                        byteWithZeroInstances = index;
-                    }
-                } else if (instanceCount[index] == 2) {
-                    if (byteWithTwoInstances == -1) {
-                        byteWithTwoInstances = index;
-                    }
-                } else if (instanceCount[index] != 1) {
-                    throw new RuntimeException("ASSERTION FAILED: Expected 0, 1 or 2 instances, instead found: " + instanceCount[index]);
-                }
-
-                if (byteWithTwoInstances != -1 && byteWithZeroInstances != -1) {
-                    break FIND_BYTES_TO_SWAP;
-                }
-            }
-
-            // Assert that if there is one that is non-zero, there is another
-            if (byteWithZeroInstances == -1 && byteWithTwoInstances == -1) {
-                break SWAP_TWO_SITES;
-            } else if (byteWithZeroInstances != -1 && byteWithTwoInstances == -1) {
-                throw new RuntimeException("ASSERTION FAILED: Found a byte with no instances, but couldn't find byte with two instances.");
-            } else if (byteWithZeroInstances == -1 && byteWithTwoInstances != -1) {
-                throw new RuntimeException("ASSERTION FAILED: Found a byte with two instances, but couldn't find byte with no instances.");
-            }
-
-            // Should we swap the first byte of two, or the second
-            boolean isSwapFirst = random.nextBoolean();
-
-            int found = 0;
-            for (int index = 0; index < child.length; index++) {
-                if (child[index] == byteWithTwoInstances) {
-                    found++;
-                    if (found > 2) {
-                        throw new RuntimeException("Found should never be greater than 2, but is: " + found);
-                    }
-                    boolean swapTheFirst = (found == 1 && isSwapFirst);
-                    boolean swapTheSecond = (found == 2 && !isSwapFirst);
-                    if (swapTheFirst || swapTheSecond) {
-                        child[index] = byteWithZeroInstances;
-                        continue SWAP_TWO_SITES;
-                    }
-                }
-            }
+        if (stopReason != null) {
+            out.println("  Stopped early: " + stopReason);
         }
+        if (restarts > 0) {
+            out.println("  Restarted the population " + restarts + " times for lack of diversity");
+        }
+        return distance;
     }
 
     /**
      * 
-     * @param array
-     * @param b
-     * @return
+     * @param map
+     * @param template Parameters that aren't swept
+     * @param specFile
+     * @param cacheFile
+     * @param threads Runs to do at the same time
+     * @throws Exception
      */
-    private static boolean contains(byte[] array, byte b) {
-
-        for (byte b2 : array) {
-            if (b2 == b) {
-                return true;
+    private static void runSweep(SalesmanMap map, GeneticAlgorithmConfig template, File specFile, File cacheFile, int threads) throws Exception {
+        Sweep sweep = Sweep.parse(specFile, template);
+        ExecutorService breedingPool = null;
+        if (template.getWorkers() > 1) {
+            breedingPool = Executors.newFixedThreadPool(template.getWorkers());
+        }
+        SweepCache cache = new SweepCache(cacheFile);
+        try {
+            sweep.run(map, template, threads, breedingPool, cache, random, System.out);
+        } finally {
+            cache.close();
+            if (breedingPool != null) {
+                breedingPool.shutdown();
             }
         }
-
-        return false;
     }
 
     /**
      * 
-     * @param start
-     * @param finish
-     * @return
+     * @param template Parameters of every solve, unless the request sets them
+     * @param address [host:]port
+     * @param threads Solves run at once
+     * @param queue
+     * @param maxSites
+     * @param batchSites
+     * @throws IOException
      */
-    private static byte[] generateRandomItinerary(byte finish) {
-        int size = finish;
-        List<Byte> bytesList = new ArrayList(size);
-        for (byte b = 1; b <= finish; b++) {
-            bytesList.add(b);
-        }
-        Collections.shuffle(bytesList);
-
-        byte[] bytesArr = new byte[size + 1];
-
-        // Always start 
-        bytesArr[0] = 0;
-        for (int i = 1; i < bytesArr.length; i++) {
-            bytesArr[i] = bytesList.get(i - 1);
-        }
-
-        return bytesArr;
+    private static void runService(GeneticAlgorithmConfig template, String address, int threads, int queue, int maxSites, int batchSites) throws IOException {
+        int colon = address.lastIndexOf(':');
+        int port = Integer.parseInt(address.substring(colon + 1));
+        InetSocketAddress socketAddress = colon > 0 ? new InetSocketAddress(address.substring(0, colon), port) : new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        long timeLimit = template.getTimeLimitMillis() > 0 ? template.getTimeLimitMillis() : DEFAULT_SERVE_TIME_LIMIT_MILLIS;
+
+        SolveService service = new SolveService(template, threads, queue, maxSites, batchSites, timeLimit);
+        service.start(socketAddress);
+        System.out.println("Solving on http://" + service.getAddress().getHostString() + ":" + service.getAddress().getPort() + "/solve with " + threads + " thread(s), up to " + (threads + queue) + " requests at once and " + timeLimit + " ms each.");
     }
 
     /**
      * 
-     * @param itinerary
-     * @param map
-     * @return
+     * @param sink May be null
+     * @param mbean May be null
+     * @return Listener that passes metrics to both, or null if both are null
      */
-    private static double getTotalTravel(byte[] itinerary, SalesmanMap map) {
-        double distance = 0;
-
-        for (int index = 0; index < itinerary.length - 1; index++) {
-            byte b1 = itinerary[index];
-            byte b2 = itinerary[index + 1];
-            distance += map.getDistance(b1, b2);
+    private static MetricsListener createMetricsListener(final MetricsListener sink, final MetricsListener mbean) {
+        if (sink == null) {
+            return mbean;
+        } else if (mbean == null) {
+            return sink;
         }
+        return new MetricsListener() {
 
-        return distance;
+            public void generationFinished(GenerationMetrics metrics) {
+                sink.generationFinished(metrics);
+                mbean.generationFinished(metrics);
+            }
+        };
     }
 
-    /**
-     * 
-     * @param b
-     * @return
-     */
-    private static String byteArrayToString(byte[] b) {
-        StringBuffer buffer = new StringBuffer();
+    private static double runTestWithRandom(SalesmanMap map, int populationSize, int generations, boolean printBestOfEachGeneration, Rng random, PrintStream out, TraceWriter traceWriter) throws InterruptedException {
+        int[] itinerary = new int[map.getNumSites()];
+        int[] bestSolution = new int[map.getNumSites()];
+        double bestSolutionDistance = -1;
+
+        GENERATIONS:
+        for (int gen = 0; gen < generations; gen++) {
+            POPULATION:
+            for (int pop = 0; pop < populationSize; pop++) {
+                Itineraries.fillRandomItinerary(itinerary, random);
+                double distance = Itineraries.getTotalTravel(itinerary, map);
 
-        for (int i = 0; i < b.length; i++) {
-            buffer.append(SalesmanMap.convertByteToChar(b[i]));
-            if (i < b.length - 1) {
-                buffer.append(" ");
+                if (bestSolutionDistance == -1 || distance < bestSolutionDistance) {
+                    bestSolutionDistance = distance;
+                    System.arraycopy(itinerary, 0, bestSolution, 0, itinerary.length);
+                }
+            }
+            if (printBestOfEachGeneration) {
+                traceWriter.traceBest(out, "", gen, bestSolution, bestSolutionDistance);
             }
         }
 
-        return buffer.toString();
+        return bestSolutionDistance;
     }
 }
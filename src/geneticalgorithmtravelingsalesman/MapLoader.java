@@ -0,0 +1,574 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * <p>Loads maps from TSPLIB .tsp files and CSV coordinate files, and tours from TSPLIB .tour files (such as the .opt.tour files of the published optima).</p>
+ * <p>Files are memory-mapped and numbers are parsed straight from the bytes, so only header lines become strings. Loaded maps have closed tours, which is how TSPLIB measures tour length.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class MapLoader {
+
+    /**
+     *
+     * @param file A .csv file, otherwise TSPLIB
+     * @return
+     * @throws IOException
+     */
+    static SalesmanMap load(File file) throws IOException {
+        if (file.getName().toLowerCase().endsWith(".csv")) {
+            return loadCsv(file);
+        }
+        return loadTsp(file);
+    }
+
+    /**
+     * <p>Supports TYPE TSP with EDGE_WEIGHT_TYPE EUC_2D, CEIL_2D, ATT, GEO or EXPLICIT (in any of the TSPLIB matrix formats).</p>
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    static SalesmanMap loadTsp(File file) throws IOException {
+        Tokens tokens = new Tokens(file);
+
+        int numSites = -1;
+        DistanceMetric metric = null;
+        String format = null;
+        double[] xs = null;
+        double[] ys = null;
+        double[] displayXs = null;
+        double[] displayYs = null;
+        double[] matrix = null;
+
+        LINES:
+        while (!tokens.isAtEnd()) {
+            String line = tokens.readLine();
+            if (line.isEmpty()) {
+                continue LINES;
+            }
+            String key = getKey(line);
+            String value = getValue(line);
+
+            if (key.equals("EOF")) {
+                break LINES;
+            } else if (key.equals("TYPE")) {
+                if (!value.equalsIgnoreCase("TSP")) {
+                    throw new RuntimeException("Only symmetric TSP instances are supported, instead found type: " + value);
+                }
+            } else if (key.equals("DIMENSION")) {
+                numSites = parseDimension(value);
+            } else if (key.equals("EDGE_WEIGHT_TYPE")) {
+                try {
+                    metric = DistanceMetric.parse(value);
+                } catch (IllegalArgumentException e) {
+                    metric = null;
+                }
+                if (metric == null || metric == DistanceMetric.EUCLIDEAN) {
+                    throw new RuntimeException("Unsupported edge weight type: " + value);
+                }
+            } else if (key.equals("EDGE_WEIGHT_FORMAT")) {
+                format = value.toUpperCase();
+            } else if (key.equals("NODE_COORD_TYPE")) {
+                if (!value.equalsIgnoreCase("TWOD_COORDS")) {
+                    throw new RuntimeException("Unsupported node coordinate type: " + value);
+                }
+            } else if (key.equals("NODE_COORD_SECTION")) {
+                requireDimension(numSites, key);
+                xs = new double[numSites];
+                ys = new double[numSites];
+                readCoordinates(tokens, xs, ys);
+            } else if (key.equals("DISPLAY_DATA_SECTION")) {
+                requireDimension(numSites, key);
+                displayXs = new double[numSites];
+                displayYs = new double[numSites];
+                readCoordinates(tokens, displayXs, displayYs);
+            } else if (key.equals("EDGE_WEIGHT_SECTION")) {
+                requireDimension(numSites, key);
+                matrix = readMatrix(tokens, numSites, format);
+            } else if (key.endsWith("_SECTION")) {
+                throw new RuntimeException("Unsupported section: " + key);
+            }
+            // Anything else (NAME, COMMENT, DISPLAY_DATA_TYPE, ...) doesn't change the map
+        }
+
+        if (metric == null) {
+            throw new RuntimeException("Missing EDGE_WEIGHT_TYPE in " + file);
+        }
+        SalesmanMap map;
+        if (metric == DistanceMetric.EXPLICIT) {
+            if (matrix == null) {
+                throw new RuntimeException("Missing EDGE_WEIGHT_SECTION in " + file);
+            }
+            map = SalesmanMap.fromMatrix(matrix, numSites, displayXs != null ? displayXs : xs, displayYs != null ? displayYs : ys);
+        } else {
+            if (xs == null) {
+                throw new RuntimeException("Missing NODE_COORD_SECTION in " + file);
+            }
+            map = SalesmanMap.fromCoordinates(xs, ys, metric);
+        }
+        map.setClosedTour(true);
+        return map;
+    }
+
+    /**
+     * <p>One site per line as x,y or id,x,y. Fields may be separated by commas, semicolons or whitespace, and a header line is skipped. Distances are unrounded Euclidean.</p>
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    static SalesmanMap loadCsv(File file) throws IOException {
+        Tokens tokens = new Tokens(file);
+
+        double[] xs = new double[1024];
+        double[] ys = new double[1024];
+        int numSites = 0;
+        int numFields = -1;
+        boolean isFirstLine = true;
+        double[] fields = new double[3];
+
+        LINES:
+        while (!tokens.isAtEnd()) {
+            tokens.skipSeparators();
+            if (tokens.isAtLineEnd()) {
+                tokens.skipLine();
+                continue LINES;
+            }
+            if (isFirstLine && !tokens.isAtNumber()) {
+                tokens.skipLine();
+                isFirstLine = false;
+                continue LINES;
+            }
+            isFirstLine = false;
+
+            int count = 0;
+            while (!tokens.isAtLineEnd()) {
+                if (count == fields.length) {
+                    throw new RuntimeException("Expected x,y or id,x,y " + tokens.describePosition());
+                }
+                fields[count++] = tokens.readDouble();
+                tokens.skipSeparators();
+            }
+            tokens.skipLine();
+            if (numFields == -1) {
+                numFields = count;
+            }
+            if (count != numFields || count < 2) {
+                throw new RuntimeException("Expected " + Math.max(2, numFields) + " fields on every line, instead found " + count + " " + tokens.describePosition());
+            }
+
+            if (numSites == xs.length) {
+                xs = Arrays.copyOf(xs, numSites * 2);
+                ys = Arrays.copyOf(ys, numSites * 2);
+            }
+            xs[numSites] = fields[count - 2];
+            ys[numSites] = fields[count - 1];
+            numSites++;
+        }
+
+        if (numSites == 0) {
+            throw new RuntimeException("No sites in " + file);
+        }
+        SalesmanMap map = SalesmanMap.fromCoordinates(Arrays.copyOf(xs, numSites), Arrays.copyOf(ys, numSites), DistanceMetric.EUCLIDEAN);
+        map.setClosedTour(true);
+        return map;
+    }
+
+    /**
+     * <p>Reads the first tour of a TSPLIB .tour file.</p>
+     * @param file
+     * @param numSites Sites on the map the tour is for
+     * @return Itinerary using 0-based sites
+     * @throws IOException
+     */
+    static int[] loadTour(File file, int numSites) throws IOException {
+        Tokens tokens = new Tokens(file);
+
+        LINES:
+        while (!tokens.isAtEnd()) {
+            String line = tokens.readLine();
+            if (line.isEmpty()) {
+                continue LINES;
+            }
+            String key = getKey(line);
+            String value = getValue(line);
+
+            if (key.equals("EOF")) {
+                break LINES;
+            } else if (key.equals("TYPE")) {
+                if (!value.equalsIgnoreCase("TOUR")) {
+                    throw new RuntimeException("Expected a tour file, instead found type: " + value);
+                }
+            } else if (key.equals("DIMENSION")) {
+                int dimension = parseDimension(value);
+                if (dimension != numSites) {
+                    throw new RuntimeException("Tour has " + dimension + " sites, but the map has " + numSites);
+                }
+            } else if (key.equals("TOUR_SECTION")) {
+                int[] tour = new int[numSites];
+                boolean[] isVisited = new boolean[numSites];
+                for (int index = 0; index < numSites; index++) {
+                    long site = tokens.readLong() - 1;
+                    if (site < 0 || site >= numSites || isVisited[(int) site]) {
+                        throw new RuntimeException("Invalid or repeated site " + (site + 1) + " " + tokens.describePosition());
+                    }
+                    isVisited[(int) site] = true;
+                    tour[index] = (int) site;
+                }
+                return tour;
+            }
+        }
+        throw new RuntimeException("Missing TOUR_SECTION in " + file);
+    }
+
+    private static String getKey(String line) {
+        int colon = line.indexOf(':');
+        return (colon == -1 ? line : line.substring(0, colon)).trim().toUpperCase();
+    }
+
+    private static String getValue(String line) {
+        int colon = line.indexOf(':');
+        return colon == -1 ? "" : line.substring(colon + 1).trim();
+    }
+
+    private static int parseDimension(String value) {
+        try {
+            int dimension = Integer.parseInt(value);
+            if (dimension < 1) {
+                throw new NumberFormatException();
+            }
+            return dimension;
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid dimension: " + value);
+        }
+    }
+
+    private static void requireDimension(int numSites, String section) {
+        if (numSites == -1) {
+            throw new RuntimeException("DIMENSION must come before " + section);
+        }
+    }
+
+    /**
+     * <p>Lines of id x y. Ids are 1-based and may come in any order.</p>
+     */
+    private static void readCoordinates(Tokens tokens, double[] xs, double[] ys) {
+        final int numSites = xs.length;
+        boolean[] isRead = new boolean[numSites];
+        for (int count = 0; count < numSites; count++) {
+            long site = tokens.readLong() - 1;
+            if (site < 0 || site >= numSites || isRead[(int) site]) {
+                throw new RuntimeException("Invalid or repeated node " + (site + 1) + " " + tokens.describePosition());
+            }
+            isRead[(int) site] = true;
+            xs[(int) site] = tokens.readDouble();
+            ys[(int) site] = tokens.readDouble();
+        }
+        tokens.skipLine();
+    }
+
+    /**
+     * <p>Fill a symmetric matrix from the weights of an EDGE_WEIGHT_SECTION. Column-wise formats list the same weights as the opposite row-wise format.</p>
+     * @param tokens
+     * @param numSites
+     * @param format
+     * @return Row-major, numSites x numSites
+     */
+    private static double[] readMatrix(Tokens tokens, int numSites, String format) {
+        if ((long) numSites * (long) numSites > Integer.MAX_VALUE) {
+            throw new RuntimeException("Too many sites for a distance matrix: " + numSites);
+        }
+        if (format == null) {
+            throw new RuntimeException("EDGE_WEIGHT_FORMAT must come before EDGE_WEIGHT_SECTION");
+        }
+
+        // Which columns of row i are listed, as [from, to) relative to i
+        final boolean isFull = format.equals("FULL_MATRIX");
+        final boolean isUpper;
+        final boolean hasDiagonal;
+        if (isFull) {
+            isUpper = false;
+            hasDiagonal = true;
+        } else if (format.equals("UPPER_ROW") || format.equals("LOWER_COL")) {
+            isUpper = true;
+            hasDiagonal = false;
+        } else if (format.equals("LOWER_ROW") || format.equals("UPPER_COL")) {
+            isUpper = false;
+            hasDiagonal = false;
+        } else if (format.equals("UPPER_DIAG_ROW") || format.equals("LOWER_DIAG_COL")) {
+            isUpper = true;
+            hasDiagonal = true;
+        } else if (format.equals("LOWER_DIAG_ROW") || format.equals("UPPER_DIAG_COL")) {
+            isUpper = false;
+            hasDiagonal = true;
+        } else {
+            throw new RuntimeException("Unsupported edge weight format: " + format);
+        }
+
+        double[] matrix = new double[numSites * numSites];
+        for (int row = 0; row < numSites; row++) {
+            int from;
+            int to;
+            if (isFull) {
+                from = 0;
+                to = numSites;
+            } else if (isUpper) {
+                from = hasDiagonal ? row : row + 1;
+                to = numSites;
+            } else {
+                from = 0;
+                to = hasDiagonal ? row + 1 : row;
+            }
+            for (int col = from; col < to; col++) {
+                double weight = tokens.readDouble();
+                matrix[row * numSites + col] = weight;
+                if (!isFull) {
+                    matrix[col * numSites + row] = weight;
+                }
+            }
+        }
+        if (!hasDiagonal) {
+            for (int site = 0; site < numSites; site++) {
+                matrix[site * numSites + site] = 0;
+            }
+        }
+        tokens.skipLine();
+        return matrix;
+    }
+
+    /**
+     * <p>Reads numbers and lines from a memory-mapped ASCII file.</p>
+     */
+    private static class Tokens {
+
+        // Powers of ten that are exact as doubles
+        private static final double[] POWERS_OF_TEN = new double[23];
+
+        static {
+            POWERS_OF_TEN[0] = 1;
+            for (int power = 1; power < POWERS_OF_TEN.length; power++) {
+                POWERS_OF_TEN[power] = POWERS_OF_TEN[power - 1] * 10;
+            }
+        }
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private final int limit;
+        private int position = 0;
+
+        Tokens(File file) throws IOException {
+            this.file = file;
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new RuntimeException("File is too large to load: " + file);
+                }
+                this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                this.limit = buffer.limit();
+            } finally {
+                // The mapping stays valid after the channel is closed
+                channel.close();
+            }
+        }
+
+        boolean isAtEnd() {
+            return position >= limit;
+        }
+
+        boolean isAtLineEnd() {
+            return position >= limit || buffer.get(position) == '\n' || buffer.get(position) == '\r';
+        }
+
+        boolean isAtNumber() {
+            if (position >= limit) {
+                return false;
+            }
+            byte b = buffer.get(position);
+            return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.';
+        }
+
+        /**
+         * <p>Skip spaces, tabs, commas and semicolons, but not line ends.</p>
+         */
+        void skipSeparators() {
+            while (position < limit) {
+                byte b = buffer.get(position);
+                if (b != ' ' && b != '\t' && b != ',' && b != ';') {
+                    return;
+                }
+                position++;
+            }
+        }
+
+        private void skipWhitespace() {
+            while (position < limit) {
+                byte b = buffer.get(position);
+                if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                    return;
+                }
+                position++;
+            }
+        }
+
+        /**
+         * <p>Skip to the start of the next line.</p>
+         */
+        void skipLine() {
+            while (position < limit && buffer.get(position) != '\n') {
+                position++;
+            }
+            position = Math.min(limit, position + 1);
+        }
+
+        /**
+         *
+         * @return The rest of the current line, trimmed
+         */
+        String readLine() {
+            int start = position;
+            while (position < limit && buffer.get(position) != '\n') {
+                position++;
+            }
+            String line = toString(start, position).trim();
+            position = Math.min(limit, position + 1);
+            return line;
+        }
+
+        long readLong() {
+            skipWhitespace();
+            int start = position;
+            boolean isNegative = false;
+            if (position < limit && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+                isNegative = buffer.get(position) == '-';
+                position++;
+            }
+            long value = 0;
+            int digits = 0;
+            while (position < limit) {
+                int digit = buffer.get(position) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                value = value * 10 + digit;
+                digits++;
+                position++;
+            }
+            if (digits == 0 || digits > 18) {
+                position = start;
+                throw new RuntimeException("Expected an integer " + describePosition());
+            }
+            return isNegative ? -value : value;
+        }
+
+        /**
+         * <p>Decimal numbers with at most 18 significant digits and small exponents are parsed exactly from the bytes. Anything else falls back to Double.parseDouble.</p>
+         * @return
+         */
+        double readDouble() {
+            skipWhitespace();
+            final int start = position;
+            boolean isNegative = false;
+            if (position < limit && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+                isNegative = buffer.get(position) == '-';
+                position++;
+            }
+
+            long mantissa = 0;
+            int digits = 0;
+            int fractionDigits = 0;
+            boolean hasDigits = false;
+            boolean isExact = true;
+            boolean isFraction = false;
+            while (position < limit) {
+                byte b = buffer.get(position);
+                if (b == '.' && !isFraction) {
+                    isFraction = true;
+                } else if (b >= '0' && b <= '9') {
+                    hasDigits = true;
+                    if (digits < 18) {
+                        mantissa = mantissa * 10 + (b - '0');
+                        if (mantissa != 0) {
+                            digits++;
+                        }
+                        if (isFraction) {
+                            fractionDigits++;
+                        }
+                    } else {
+                        isExact = false;
+                    }
+                } else {
+                    break;
+                }
+                position++;
+            }
+            if (!hasDigits) {
+                position = start;
+                throw new RuntimeException("Expected a number " + describePosition());
+            }
+
+            int exponent = 0;
+            if (position < limit && (buffer.get(position) == 'e' || buffer.get(position) == 'E')) {
+                position++;
+                boolean isNegativeExponent = false;
+                if (position < limit && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+                    isNegativeExponent = buffer.get(position) == '-';
+                    position++;
+                }
+                int exponentStart = position;
+                while (position < limit && isDigit(position)) {
+                    exponent = Math.min(100000, exponent * 10 + (buffer.get(position) - '0'));
+                    position++;
+                }
+                if (position == exponentStart) {
+                    position = start;
+                    throw new RuntimeException("Expected a number " + describePosition());
+                }
+                if (isNegativeExponent) {
+                    exponent = -exponent;
+                }
+            }
+
+            int power = exponent - fractionDigits;
+            if (!isExact || mantissa >= (1L << 53) || power < -22 || power > 22) {
+                return Double.parseDouble(toString(start, position));
+            }
+            double value = power >= 0 ? mantissa * POWERS_OF_TEN[power] : mantissa / POWERS_OF_TEN[-power];
+            return isNegative ? -value : value;
+        }
+
+        private boolean isDigit(int index) {
+            byte b = buffer.get(index);
+            return b >= '0' && b <= '9';
+        }
+
+        private String toString(int start, int end) {
+            byte[] bytes = new byte[end - start];
+            for (int index = start; index < end; index++) {
+                bytes[index - start] = buffer.get(index);
+            }
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+
+        /**
+         *
+         * @return Line number and file, for error messages
+         */
+        String describePosition() {
+            int line = 1;
+            for (int index = 0; index < Math.min(position, limit); index++) {
+                if (buffer.get(index) == '\n') {
+                    line++;
+                }
+            }
+            return "on line " + line + " of " + file;
+        }
+    }
+}
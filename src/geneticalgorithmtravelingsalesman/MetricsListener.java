@@ -0,0 +1,18 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+/**
+ * <p>Receives the metrics of every generation. Called from the thread running the genetic algorithm, and possibly from several runs at once.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+interface MetricsListener {
+
+    /**
+     * 
+     * @param metrics Reused for the next generation, so copy anything to keep
+     */
+    void generationFinished(GenerationMetrics metrics);
+}
@@ -0,0 +1,97 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * <p>Writes the metrics of every generation to a file, one line each: CSV if the file name ends with .csv, otherwise JSON lines.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class MetricsSink implements MetricsListener, Closeable {
+
+    private final Writer writer;
+    private final boolean isCsv;
+    private final StringBuilder line = new StringBuilder();
+    private IOException error = null;
+
+    /**
+     * 
+     * @param file
+     * @throws IOException
+     */
+    MetricsSink(File file) throws IOException {
+        this.isCsv = file.getName().toLowerCase().endsWith(".csv");
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        if (isCsv) {
+            writer.write("run,generation,best,mean,worst,uniqueTours,meanEdgeDistance,diversityGeneration,generationNanos");
+            for (String phase : PhaseTimes.NAMES) {
+                writer.write("," + phase + "Nanos");
+            }
+            writer.write(",allocatedBytes,fitnessCacheHits,fitnessCacheMisses\n");
+        }
+    }
+
+    public synchronized void generationFinished(GenerationMetrics metrics) {
+        if (error != null) {
+            return;
+        }
+        line.setLength(0);
+        if (isCsv) {
+            line.append('"').append(metrics.getRun()).append('"');
+            line.append(',').append(metrics.getGeneration());
+            line.append(',').append(metrics.getBestDistance());
+            line.append(',').append(metrics.getMeanDistance());
+            line.append(',').append(metrics.getWorstDistance());
+            line.append(',').append(metrics.getUniqueTours());
+            line.append(',').append(metrics.getMeanEdgeDistance());
+            line.append(',').append(metrics.getDiversityGeneration());
+            line.append(',').append(metrics.getGenerationNanos());
+            for (int phase = 0; phase < PhaseTimes.PHASES; phase++) {
+                line.append(',').append(metrics.getPhaseTimes().nanos[phase]);
+            }
+            line.append(',').append(metrics.getPhaseTimes().allocatedBytes);
+            line.append(',').append(metrics.getPhaseTimes().fitnessCacheHits);
+            line.append(',').append(metrics.getPhaseTimes().fitnessCacheMisses);
+        } else {
+            line.append("{\"run\":\"").append(metrics.getRun()).append('"');
+            line.append(",\"generation\":").append(metrics.getGeneration());
+            line.append(",\"best\":").append(metrics.getBestDistance());
+            line.append(",\"mean\":").append(metrics.getMeanDistance());
+            line.append(",\"worst\":").append(metrics.getWorstDistance());
+            line.append(",\"uniqueTours\":").append(metrics.getUniqueTours());
+            line.append(",\"meanEdgeDistance\":").append(metrics.getMeanEdgeDistance());
+            line.append(",\"diversityGeneration\":").append(metrics.getDiversityGeneration());
+            line.append(",\"generationNanos\":").append(metrics.getGenerationNanos());
+            for (int phase = 0; phase < PhaseTimes.PHASES; phase++) {
+                line.append(",\"").append(PhaseTimes.NAMES[phase]).append("Nanos\":").append(metrics.getPhaseTimes().nanos[phase]);
+            }
+            line.append(",\"allocatedBytes\":").append(metrics.getPhaseTimes().allocatedBytes);
+            line.append(",\"fitnessCacheHits\":").append(metrics.getPhaseTimes().fitnessCacheHits);
+            line.append(",\"fitnessCacheMisses\":").append(metrics.getPhaseTimes().fitnessCacheMisses);
+            line.append('}');
+        }
+        line.append('\n');
+        try {
+            writer.append(line);
+        } catch (IOException e) {
+            // Don't fail the run over metrics. Reported on close.
+            error = e;
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        writer.close();
+        if (error != null) {
+            throw error;
+        }
+    }
+}
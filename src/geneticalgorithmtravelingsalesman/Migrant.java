@@ -0,0 +1,25 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+/**
+ * <p>An itinerary moving from one island's population to another's.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class Migrant {
+
+    final int[] itinerary;
+    final double distance;
+
+    /**
+     * 
+     * @param itinerary Not copied, so don't reuse it
+     * @param distance
+     */
+    Migrant(int[] itinerary, double distance) {
+        this.itinerary = itinerary;
+        this.distance = distance;
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+/**
+ * <p>How an island of the genetic algorithm sends its best itineraries to other islands and receives theirs. Neither method may block.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+interface MigrationChannel {
+
+    /**
+     * <p>Send a copy of an itinerary to the islands this one is connected to.</p>
+     * @param tours
+     * @param offset Where the itinerary starts in tours
+     * @param numSites
+     * @param distance
+     */
+    void emigrate(int[] tours, int offset, int numSites, double distance);
+
+    /**
+     * 
+     * @return Next itinerary sent to this island, or null if none waiting
+     */
+    Migrant immigrate();
+}
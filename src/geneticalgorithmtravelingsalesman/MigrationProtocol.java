@@ -0,0 +1,242 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * <p>Binary messages between the coordinator and the island processes of a distributed run. Each message is a one-byte type followed by its fields, big-endian.</p>
+ * <ul>
+ *   <li>SETUP (coordinator to island): trial, island, islands, seed, distance matrix flag, map, config</li>
+ *   <li>MIGRANT (both ways): trial, distance, itinerary</li>
+ *   <li>RESULT (island to coordinator): trial, distance, itinerary</li>
+ *   <li>SHUTDOWN (coordinator to island): no fields</li>
+ * </ul>
+ * <p>Itineraries are sent as a site count followed by the sites, two bytes each when every site fits in an unsigned short, otherwise four.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class MigrationProtocol {
+
+    static final byte SETUP = 1;
+    static final byte MIGRANT = 2;
+    static final byte RESULT = 3;
+    static final byte SHUTDOWN = 4;
+    private static final int MAX_SHORT_SITES = 0xFFFF;
+
+    private MigrationProtocol() {
+    }
+
+    /**
+     * <p>What an island needs to run its part of a trial.</p>
+     */
+    static class Setup {
+
+        int trial;
+        int island;
+        int islands;
+        long seed;
+        SalesmanMap map;
+        GeneticAlgorithmConfig config;
+    }
+
+    static void writeSetup(DataOutputStream out, Setup setup) throws IOException {
+        out.writeByte(SETUP);
+        out.writeInt(setup.trial);
+        out.writeInt(setup.island);
+        out.writeInt(setup.islands);
+        out.writeLong(setup.seed);
+        out.writeBoolean(setup.map.hasDistanceMatrix());
+        writeMap(out, setup.map);
+        writeConfig(out, setup.config);
+        out.flush();
+    }
+
+    /**
+     * <p>Fields of a SETUP message, after its type has been read.</p>
+     */
+    static Setup readSetup(DataInputStream in) throws IOException {
+        Setup setup = new Setup();
+        setup.trial = in.readInt();
+        setup.island = in.readInt();
+        setup.islands = in.readInt();
+        setup.seed = in.readLong();
+        boolean distanceMatrix = in.readBoolean();
+        setup.map = readMap(in);
+        if (distanceMatrix) {
+            setup.map.precomputeDistances();
+        }
+        setup.config = readConfig(in);
+        return setup;
+    }
+
+    /**
+     * <p>MIGRANT or RESULT message.</p>
+     */
+    static void writeItinerary(DataOutputStream out, byte type, int trial, double distance, int[] tours, int offset, int numSites) throws IOException {
+        out.writeByte(type);
+        out.writeInt(trial);
+        out.writeDouble(distance);
+        writeSites(out, tours, offset, numSites);
+        out.flush();
+    }
+
+    /**
+     * <p>Site count, then the sites as unsigned shorts if the count fits in one, otherwise as ints. Also used by checkpoints.</p>
+     */
+    static void writeSites(DataOutput out, int[] sites, int offset, int numSites) throws IOException {
+        out.writeInt(numSites);
+        if (numSites <= MAX_SHORT_SITES) {
+            for (int i = offset; i < offset + numSites; i++) {
+                out.writeShort(sites[i]);
+            }
+        } else {
+            for (int i = offset; i < offset + numSites; i++) {
+                out.writeInt(sites[i]);
+            }
+        }
+    }
+
+    /**
+     * <p>Itinerary of a MIGRANT or RESULT message, after its type and trial have been read.</p>
+     */
+    static Migrant readItinerary(DataInputStream in) throws IOException {
+        double distance = in.readDouble();
+        int numSites = in.readInt();
+        int[] itinerary = new int[numSites];
+        readSites(in, itinerary, 0, numSites);
+        return new Migrant(itinerary, distance);
+    }
+
+    /**
+     * <p>Sites written by writeSites, after the count has been read.</p>
+     */
+    static void readSites(DataInput in, int[] sites, int offset, int numSites) throws IOException {
+        if (numSites <= MAX_SHORT_SITES) {
+            for (int i = offset; i < offset + numSites; i++) {
+                sites[i] = in.readUnsignedShort();
+            }
+        } else {
+            for (int i = offset; i < offset + numSites; i++) {
+                sites[i] = in.readInt();
+            }
+        }
+    }
+
+    static void writeMap(DataOutput out, SalesmanMap map) throws IOException {
+        final int numSites = map.getNumSites();
+        out.writeInt(map.getHeight());
+        out.writeInt(map.getWidth());
+        out.writeInt(numSites);
+        for (int site = 0; site < numSites; site++) {
+            out.writeInt(map.getSiteRow(site));
+            out.writeInt(map.getSiteCol(site));
+        }
+        out.writeUTF(map.getMetric().name());
+        out.writeBoolean(map.isClosedTour());
+        if (map.getMetric() == DistanceMetric.EXPLICIT) {
+            for (int start = 0; start < numSites; start++) {
+                for (int dest = 0; dest < numSites; dest++) {
+                    out.writeDouble(map.getDistance(start, dest));
+                }
+            }
+        } else {
+            for (int site = 0; site < numSites; site++) {
+                out.writeDouble(map.getSiteX(site));
+                out.writeDouble(map.getSiteY(site));
+            }
+        }
+    }
+
+    static SalesmanMap readMap(DataInput in) throws IOException {
+        int height = in.readInt();
+        int width = in.readInt();
+        int numSites = in.readInt();
+        int[] rows = new int[numSites];
+        int[] cols = new int[numSites];
+        for (int site = 0; site < numSites; site++) {
+            rows[site] = in.readInt();
+            cols[site] = in.readInt();
+        }
+        DistanceMetric metric = DistanceMetric.parse(in.readUTF());
+        boolean isClosedTour = in.readBoolean();
+        double[] xs = null;
+        double[] ys = null;
+        double[] matrix = null;
+        if (metric == DistanceMetric.EXPLICIT) {
+            matrix = new double[numSites * numSites];
+            for (int index = 0; index < matrix.length; index++) {
+                matrix[index] = in.readDouble();
+            }
+        } else {
+            xs = new double[numSites];
+            ys = new double[numSites];
+            for (int site = 0; site < numSites; site++) {
+                xs[site] = in.readDouble();
+                ys[site] = in.readDouble();
+            }
+        }
+        return SalesmanMap.fromParts(height, width, rows, cols, xs, ys, metric, matrix, isClosedTour);
+    }
+
+    static void writeConfig(DataOutput out, GeneticAlgorithmConfig config) throws IOException {
+        out.writeInt(config.getPopulationSize());
+        out.writeDouble(config.getPercentageMate());
+        out.writeInt(config.getGenerations());
+        out.writeBoolean(config.isElitism());
+        out.writeDouble(config.getCrossOverRate());
+        out.writeDouble(config.getMutationRate());
+        out.writeBoolean(config.isPrintBestOfEachGeneration());
+        out.writeInt(config.getWorkers());
+        out.writeUTF(config.getCrossover().name());
+        out.writeUTF(config.getMutation().name());
+        out.writeUTF(config.getLocalSearch().name());
+        out.writeInt(config.getNeighbors());
+        out.writeUTF(config.getSelection().name());
+        out.writeInt(config.getTournamentSize());
+        out.writeInt(config.getMigrationInterval());
+        out.writeInt(config.getMigrants());
+        out.writeUTF(config.getTopology().name());
+        out.writeInt(config.getStagnationGenerations());
+        out.writeDouble(config.getTargetDistance());
+        out.writeLong(config.getTimeLimitMillis());
+        out.writeDouble(config.getDiversityThreshold());
+        out.writeUTF(config.getDiversityResponse().name());
+        out.writeInt(config.getFitnessCacheSize());
+        out.writeInt(config.getMetricsDiversityInterval());
+    }
+
+    static GeneticAlgorithmConfig readConfig(DataInput in) throws IOException {
+        GeneticAlgorithmConfig config = new GeneticAlgorithmConfig();
+        config.setPopulationSize(in.readInt());
+        config.setPercentageMate(in.readDouble());
+        config.setGenerations(in.readInt());
+        config.setElitism(in.readBoolean());
+        config.setCrossOverRate(in.readDouble());
+        config.setMutationRate(in.readDouble());
+        config.setPrintBestOfEachGeneration(in.readBoolean());
+        config.setWorkers(in.readInt());
+        config.setCrossover(CrossoverOperator.valueOf(in.readUTF()));
+        config.setMutation(MutationOperator.valueOf(in.readUTF()));
+        config.setLocalSearch(LocalSearchMode.valueOf(in.readUTF()));
+        config.setNeighbors(in.readInt());
+        config.setSelection(SelectionScheme.valueOf(in.readUTF()));
+        config.setTournamentSize(in.readInt());
+        config.setMigrationInterval(in.readInt());
+        config.setMigrants(in.readInt());
+        config.setTopology(MigrationTopology.valueOf(in.readUTF()));
+        config.setStagnationGenerations(in.readInt());
+        config.setTargetDistance(in.readDouble());
+        config.setTimeLimitMillis(in.readLong());
+        config.setDiversityThreshold(in.readDouble());
+        config.setDiversityResponse(DiversityResponse.valueOf(in.readUTF()));
+        config.setFitnessCacheSize(in.readInt());
+        config.setMetricsDiversityInterval(in.readInt());
+        return config;
+    }
+}
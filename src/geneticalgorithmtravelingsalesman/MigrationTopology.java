@@ -0,0 +1,34 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+/**
+ * <p>Which islands each island sends migrants to.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+public enum MigrationTopology {
+
+    /**
+     * <p>Island i sends to island i + 1, and the last sends to the first.</p>
+     */
+    RING,
+    /**
+     * <p>Every island sends to every other island.</p>
+     */
+    FULL;
+
+    /**
+     * 
+     * @param name Case-insensitive
+     * @return
+     */
+    static MigrationTopology parse(String name) {
+        try {
+            return valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown migration topology: " + name);
+        }
+    }
+}
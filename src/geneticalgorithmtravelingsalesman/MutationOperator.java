@@ -0,0 +1,227 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+
+/**
+ * <p>Ways to mutate a child in place.</p>
+ * <p>Except for RESET, each operator moves sites around without ever breaking the itinerary, so no repair is needed. For those, the mutation rate is the chance of a mutation starting at each site, and the sites to mutate are found by skipping ahead a geometrically distributed distance, so the cost is per mutation rather than per site.</p>
+ * <p>Those operators also return how much the total travel changed, by subtracting the edges they break and adding the edges they make, so a mutated copy of a parent can be scored without walking the whole itinerary.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+public enum MutationOperator {
+
+    /**
+     * <p>Original operator: overwrite a site with a random site, then repair the duplicate.</p>
+     */
+    RESET {
+
+        @Override()
+        double mutate(int[] child, Breeder breeder) {
+            final Rng random = breeder.getRandom();
+            final double mutationRate = breeder.getMutationRate();
+
+            breeder.recordPositions(child);
+
+            // Do some random mutations
+            for (int index = 0; index < child.length; index++) {
+                double r = random.nextFloat();
+
+                // The reason we double the random vaule is because in the process of checking for integrity,
+                // half chance go back to way was before!
+                if (r < mutationRate * 2) {
+                    int mutationValue = random.nextInt(child.length);
+                    breeder.replaceSite(child, index, mutationValue);
+                }
+            }
+            return Double.NaN;
+        }
+
+        double mutate(int[] child, int index, int other, Breeder breeder) {
+            breeder.recordPositions(child);
+            breeder.replaceSite(child, index, child[other]);
+            return Double.NaN;
+        }
+    },
+    /**
+     * <p>Swap two sites. Constant time.</p>
+     */
+    SWAP {
+
+        double mutate(int[] child, int index, int other, Breeder breeder) {
+            final SalesmanMap map = breeder.getMap();
+            int first = Math.min(index, other);
+            int second = Math.max(index, other);
+
+            // Edges on either side of both sites (which overlap if the sites are next to each other)
+            double before = edges(child, first - 1, first, map) + edges(child, Math.max(first + 1, second - 1), second, map);
+
+            int temp = child[index];
+            child[index] = child[other];
+            child[other] = temp;
+
+            double after = edges(child, first - 1, first, map) + edges(child, Math.max(first + 1, second - 1), second, map);
+            return after - before;
+        }
+    },
+    /**
+     * <p>Reverse the segment between two sites (a 2-opt move).</p>
+     */
+    INVERSION {
+
+        double mutate(int[] child, int index, int other, Breeder breeder) {
+            final SalesmanMap map = breeder.getMap();
+            int start = Math.min(index, other);
+            int end = Math.max(index, other);
+
+            // Edges inside the segment are just reversed, so only the two edges at the ends change
+            double before = edges(child, start - 1, start - 1, map) + edges(child, end, end, map);
+            double after = (start > 0 ? map.getDistance(child[start - 1], child[end]) : 0) + (end < child.length - 1 ? map.getDistance(child[start], child[end + 1]) : 0);
+
+            while (start < end) {
+                int temp = child[start];
+                child[start++] = child[end];
+                child[end--] = temp;
+            }
+            return after - before;
+        }
+    },
+    /**
+     * <p>Move a site to another position, shifting the sites in between.</p>
+     */
+    INSERTION {
+
+        double mutate(int[] child, int index, int other, Breeder breeder) {
+            final SalesmanMap map = breeder.getMap();
+
+            // Edges around where the site was and where it goes
+            double before;
+            double after;
+            int site = child[index];
+            if (index < other) {
+                before = edges(child, index - 1, index, map) + edges(child, other, other, map);
+                System.arraycopy(child, index + 1, child, index, other - index);
+                child[other] = site;
+                after = edges(child, index - 1, index - 1, map) + edges(child, other - 1, other, map);
+            } else {
+                before = edges(child, other - 1, other - 1, map) + edges(child, index - 1, index, map);
+                System.arraycopy(child, other, child, other + 1, index - other);
+                child[other] = site;
+                after = edges(child, other - 1, other, map) + edges(child, index, index, map);
+            }
+            return after - before;
+        }
+    },
+    /**
+     * <p>Shuffle the segment between two sites.</p>
+     */
+    SCRAMBLE {
+
+        double mutate(int[] child, int index, int other, Breeder breeder) {
+            final Rng random = breeder.getRandom();
+            final SalesmanMap map = breeder.getMap();
+            int start = Math.min(index, other);
+            int end = Math.max(index, other);
+            double before = edges(child, start - 1, end, map);
+            for (int i = end; i > start; i--) {
+                int j = start + random.nextInt(i - start + 1);
+                int temp = child[i];
+                child[i] = child[j];
+                child[j] = temp;
+            }
+            return edges(child, start - 1, end, map) - before;
+        }
+    };
+
+    /**
+     * <p>Apply the mutation at each site with chance of the mutation rate.</p>
+     * @param child
+     * @param breeder Supplies the random number generator and scratch space
+     * @return Change in total travel, or NaN if the operator doesn't track it
+     */
+    double mutate(int[] child, Breeder breeder) {
+        final Rng random = breeder.getRandom();
+        final double mutationRate = breeder.getMutationRate();
+        if (mutationRate <= 0 || child.length < 2) {
+            return 0;
+        }
+
+        final SalesmanMap map = breeder.getMap();
+        if (!map.isClosedTour()) {
+            return mutateSites(child, breeder, random, mutationRate);
+        }
+
+        // The operators only score edges within the itinerary, so score the edge back to the first site here
+        final int last = child.length - 1;
+        double closingEdge = map.getDistance(child[last], child[0]);
+        double delta = mutateSites(child, breeder, random, mutationRate);
+        return delta + map.getDistance(child[last], child[0]) - closingEdge;
+    }
+
+    private double mutateSites(int[] child, Breeder breeder, Rng random, double mutationRate) {
+        double delta = 0;
+
+        final double logNoMutation = Math.log(1.0 - mutationRate);
+        int index = -1;
+        while (true) {
+            // Number of sites until the next mutation is geometrically distributed
+            if (mutationRate >= 1.0) {
+                index++;
+            } else {
+                double skip = Math.floor(Math.log(1.0 - random.nextDouble()) / logNoMutation);
+                if (skip >= child.length - index) {
+                    return delta;
+                }
+                index += 1 + (int) skip;
+            }
+            if (index >= child.length) {
+                return delta;
+            }
+
+            int other = random.nextInt(child.length - 1);
+            if (other >= index) {
+                other++;
+            }
+            delta += mutate(child, index, other, breeder);
+        }
+    }
+
+    /**
+     * <p>Apply the mutation between two different sites.</p>
+     * @return Change in total travel, or NaN if the operator doesn't track it
+     */
+    abstract double mutate(int[] child, int index, int other, Breeder breeder);
+
+    /**
+     * <p>Total length of edges first to last, where edge k joins the sites at k and k + 1. Edges that fall off either end of the itinerary are ignored.</p>
+     * @param itinerary
+     * @param first
+     * @param last
+     * @param map
+     * @return
+     */
+    static double edges(int[] itinerary, int first, int last, SalesmanMap map) {
+        first = Math.max(first, 0);
+        last = Math.min(last, itinerary.length - 2);
+        double distance = 0;
+        for (int k = first; k <= last; k++) {
+            distance += map.getDistance(itinerary[k], itinerary[k + 1]);
+        }
+        return distance;
+    }
+
+    /**
+     * 
+     * @param name Case-insensitive
+     * @return
+     */
+    static MutationOperator parse(String name) {
+        try {
+            return valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown mutation operator: " + name);
+        }
+    }
+}
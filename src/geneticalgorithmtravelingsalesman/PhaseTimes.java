@@ -0,0 +1,103 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * <p>Time spent in each phase of breeding, and bytes allocated. Breeders time only every SAMPLE_INTERVAL-th child, so timing costs a few calls to System.nanoTime per eight children; addScaled extrapolates to all children.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class PhaseTimes {
+
+    static final int SELECTION = 0;
+    static final int CROSSOVER = 1;
+    static final int REPAIR = 2;
+    static final int MUTATION = 3;
+    static final int EVALUATION = 4;
+    static final int LOCAL_SEARCH = 5;
+    // Measuring the generation metrics themselves
+    static final int METRICS = 6;
+    static final int PHASES = 7;
+    static final String[] NAMES = {"selection", "crossover", "repair", "mutation", "evaluation", "localSearch", "metrics"};
+    static final int SAMPLE_INTERVAL = 8;
+    private static final com.sun.management.ThreadMXBean THREADS = getThreadMXBean();
+    final long[] nanos = new long[PHASES];
+    long allocatedBytes = 0;
+    // Breeders only
+    int children = 0;
+    int sampledChildren = 0;
+    // Counted for every child, so not scaled
+    long fitnessCacheHits = 0;
+    long fitnessCacheMisses = 0;
+
+    /**
+     * 
+     * @param phase
+     * @param since From System.nanoTime
+     * @return Now, to time the next phase from
+     */
+    long lap(int phase, long since) {
+        long now = System.nanoTime();
+        nanos[phase] += now - since;
+        return now;
+    }
+
+    /**
+     * <p>Add the times of a breeder, scaled up from the children it timed to all the children it bred, then clear them.</p>
+     * @param breederTimes
+     */
+    void addScaled(PhaseTimes breederTimes) {
+        if (breederTimes.sampledChildren > 0) {
+            double scale = (double) breederTimes.children / breederTimes.sampledChildren;
+            for (int phase = 0; phase < PHASES; phase++) {
+                nanos[phase] += Math.round(breederTimes.nanos[phase] * scale);
+            }
+        }
+        allocatedBytes += breederTimes.allocatedBytes;
+        fitnessCacheHits += breederTimes.fitnessCacheHits;
+        fitnessCacheMisses += breederTimes.fitnessCacheMisses;
+        breederTimes.clear();
+    }
+
+    void clear() {
+        Arrays.fill(nanos, 0);
+        allocatedBytes = 0;
+        children = 0;
+        sampledChildren = 0;
+        fitnessCacheHits = 0;
+        fitnessCacheMisses = 0;
+    }
+
+    /**
+     * 
+     * @return Bytes allocated so far by the current thread, or 0 if the JVM can't tell
+     */
+    static long getAllocatedBytes() {
+        if (THREADS == null) {
+            return 0;
+        }
+        return Math.max(0, THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()));
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadMXBean() {
+        try {
+            java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+                if (allocations.isThreadAllocatedMemorySupported()) {
+                    allocations.setThreadAllocatedMemoryEnabled(true);
+                    return allocations;
+                }
+            }
+        } catch (LinkageError e) {
+            // Not a HotSpot JVM
+        } catch (UnsupportedOperationException e) {
+            // Nothing to do
+        }
+        return null;
+    }
+}
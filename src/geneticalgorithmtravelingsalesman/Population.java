@@ -0,0 +1,205 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+/**
+ * <p>Every itinerary of a generation, stored as one flat array of sites with a parallel array of total distances (fitness).</p>
+ * <p>Individuals are ranked by sorting an index array, so nothing is boxed and individuals with the same distance are all kept.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class Population {
+
+    private final int size;
+    private final int numSites;
+    // Itinerary of individual i is tours[i * numSites] to tours[(i + 1) * numSites - 1]
+    private final int[] tours;
+    private final double[] fitness;
+    // Indices of individuals, shortest distance first (after rank is called)
+    private final int[] ranking;
+
+    /**
+     * 
+     * @param size Number of individuals
+     * @param numSites Length of each itinerary
+     */
+    Population(int size, int numSites) {
+        if ((long) size * (long) numSites > Integer.MAX_VALUE) {
+            throw new RuntimeException("Population too large: " + size + " itineraries of " + numSites + " sites");
+        }
+        this.size = size;
+        this.numSites = numSites;
+        this.tours = new int[size * numSites];
+        this.fitness = new double[size];
+        this.ranking = new int[size];
+        for (int i = 0; i < size; i++) {
+            ranking[i] = i;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getNumSites() {
+        return numSites;
+    }
+
+    /**
+     * 
+     * @return The flat array of all itineraries. Use getOffset to find an individual.
+     */
+    int[] getTours() {
+        return tours;
+    }
+
+    /**
+     * 
+     * @param index
+     * @return Where the itinerary of the individual starts in getTours()
+     */
+    int getOffset(int index) {
+        return index * numSites;
+    }
+
+    double getFitness(int index) {
+        return fitness[index];
+    }
+
+    /**
+     * 
+     * @param index
+     * @param itinerary Copied, so can be reused by caller
+     * @param distance
+     */
+    void set(int index, int[] itinerary, double distance) {
+        System.arraycopy(itinerary, 0, tours, index * numSites, numSites);
+        fitness[index] = distance;
+    }
+
+    /**
+     * 
+     * @param index
+     * @param source
+     * @param sourceIndex
+     */
+    void copy(int index, Population source, int sourceIndex) {
+        System.arraycopy(source.tours, sourceIndex * numSites, tours, index * numSites, numSites);
+        fitness[index] = source.fitness[sourceIndex];
+    }
+
+    /**
+     * 
+     * @param index
+     * @param dest
+     */
+    void copyTour(int index, int[] dest) {
+        System.arraycopy(tours, index * numSites, dest, 0, numSites);
+    }
+
+    /**
+     * <p>Sort individuals by distance, shortest first. Ties are ordered by index.</p>
+     */
+    void rank() {
+        for (int i = 0; i < size; i++) {
+            ranking[i] = i;
+        }
+        sort(0, size - 1);
+    }
+
+    /**
+     * 
+     * @param rank 0 is the shortest distance
+     * @return Index of individual with that rank
+     */
+    int getRanked(int rank) {
+        return ranking[rank];
+    }
+
+    /**
+     * <p>Itineraries are compared by a hash of their sites. Used for both the diversity response and the generation metrics.</p>
+     * @param scratch Cleared and filled with the hashes
+     * @return Number of different itineraries
+     */
+    int countUniqueTours(LongHashSet scratch) {
+        scratch.clear();
+        for (int individual = 0; individual < size; individual++) {
+            int offset = individual * numSites;
+            long hash = 1125899906842597L;
+            for (int index = 0; index < numSites; index++) {
+                hash = 31 * hash + tours[offset + index];
+            }
+            scratch.add(hash);
+        }
+        return scratch.size();
+    }
+
+    private boolean isLess(int a, int b) {
+        if (fitness[a] != fitness[b]) {
+            return fitness[a] < fitness[b];
+        }
+        return a < b;
+    }
+
+    /**
+     * <p>Quicksort of ranking[low] to ranking[high], using insertion sort for short ranges.</p>
+     */
+    private void sort(int low, int high) {
+        while (high - low > 16) {
+            // Median of three as pivot
+            int mid = (low + high) >>> 1;
+            if (isLess(ranking[mid], ranking[low])) {
+                swap(mid, low);
+            }
+            if (isLess(ranking[high], ranking[low])) {
+                swap(high, low);
+            }
+            if (isLess(ranking[high], ranking[mid])) {
+                swap(high, mid);
+            }
+            int pivot = ranking[mid];
+
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (isLess(ranking[i], pivot)) {
+                    i++;
+                }
+                while (isLess(pivot, ranking[j])) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            // Recurse on smaller side, loop on larger, so stack stays shallow
+            if (j - low < high - i) {
+                sort(low, j);
+                low = i;
+            } else {
+                sort(i, high);
+                high = j;
+            }
+        }
+
+        for (int i = low + 1; i <= high; i++) {
+            int index = ranking[i];
+            int j = i - 1;
+            while (j >= low && isLess(index, ranking[j])) {
+                ranking[j + 1] = ranking[j];
+                j--;
+            }
+            ranking[j + 1] = index;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int temp = ranking[i];
+        ranking[i] = ranking[j];
+        ranking[j] = temp;
+    }
+}
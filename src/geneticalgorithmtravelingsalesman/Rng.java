@@ -0,0 +1,137 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Fast random number generator (xoshiro256**) for a single thread. Unlike java.util.Random there is no atomic update per number, so it costs a few shifts and adds.</p>
+ * <p>Each trial, island and breeding worker gets its own generator, split from the one above it, so the random numbers of a run don't depend on how the threads are scheduled. Runs with more than one island still aren't reproducible: migrants arrive whenever their island sends them, so which generation takes them in depends on timing. The same goes for trials that stop on a time limit.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+final class Rng {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    // Seeds generators made without a seed, so each differs
+    private static final AtomicLong seeder = new AtomicLong(mix(System.currentTimeMillis()) ^ mix(System.nanoTime()));
+    private long s0;
+    private long s1;
+    private long s2;
+    private long s3;
+
+    /**
+     * <p>Generator with a seed that differs from every other generator made this way.</p>
+     */
+    Rng() {
+        this(seeder.getAndAdd(GOLDEN_GAMMA));
+    }
+
+    /**
+     *
+     * @param seed Generators with the same seed produce the same numbers
+     */
+    Rng(long seed) {
+        setSeed(seed);
+    }
+
+    /**
+     *
+     * @param state As returned by getState
+     */
+    Rng(long[] state) {
+        if (state.length != 4 || (state[0] | state[1] | state[2] | state[3]) == 0) {
+            throw new RuntimeException("Invalid random number generator state");
+        }
+        s0 = state[0];
+        s1 = state[1];
+        s2 = state[2];
+        s3 = state[3];
+    }
+
+    /**
+     * <p>Expand the seed into the generator's state with SplitMix64, as the xoshiro authors recommend.</p>
+     * @param seed
+     */
+    void setSeed(long seed) {
+        s0 = mix(seed += GOLDEN_GAMMA);
+        s1 = mix(seed += GOLDEN_GAMMA);
+        s2 = mix(seed += GOLDEN_GAMMA);
+        s3 = mix(seed + GOLDEN_GAMMA);
+    }
+
+    /**
+     *
+     * @return New generator seeded from this one
+     */
+    Rng split() {
+        return new Rng(nextLong());
+    }
+
+    long nextLong() {
+        final long result = Long.rotateLeft(s1 * 5, 7) * 9;
+        final long t = s1 << 17;
+        s2 ^= s0;
+        s3 ^= s1;
+        s1 ^= s2;
+        s0 ^= s3;
+        s2 ^= t;
+        s3 = Long.rotateLeft(s3, 45);
+        return result;
+    }
+
+    /**
+     * <p>Unbiased, using Lemire's multiply-and-reject method.</p>
+     * @param bound Positive
+     * @return 0 to bound - 1
+     */
+    int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive: " + bound);
+        }
+        long product = (nextLong() >>> 32) * bound;
+        if ((product & 0xFFFFFFFFL) < bound) {
+            // 2^32 mod bound values of the low half would make some results more likely
+            final long threshold = (0x100000000L - bound) % bound;
+            while ((product & 0xFFFFFFFFL) < threshold) {
+                product = (nextLong() >>> 32) * bound;
+            }
+        }
+        return (int) (product >>> 32);
+    }
+
+    /**
+     *
+     * @return 0.0 (inclusive) to 1.0 (exclusive)
+     */
+    double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     *
+     * @return 0.0 (inclusive) to 1.0 (exclusive)
+     */
+    float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    boolean nextBoolean() {
+        return nextLong() < 0;
+    }
+
+    /**
+     *
+     * @return The generator's state, so it can carry on from the same point
+     */
+    long[] getState() {
+        return new long[]{s0, s1, s2, s3};
+    }
+
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -4,7 +4,7 @@
  */
 package geneticalgorithmtravelingsalesman;
 
-import java.util.Random;
+import java.util.Arrays;
 
 /**
  *
@@ -14,11 +14,25 @@ public class SalesmanMap {
 
     private final int height;
     private final int width;
-    private static final Random random = new Random();
-    private final byte[][] map;
+    // Loaded maps are drawn at most this many cells high and wide
+    private static final int MAX_DRAWN_SIZE = 1000;
     private int salesmanCol = 0;
     private int salesmanRow = 0;
-    private byte lastSite = -1;
+    private int lastSite = -1;
+    // Only the sites are stored (not a height x width grid), so memory scales with number of sites instead of map area
+    private int[] siteRows;
+    private int[] siteCols;
+    // Coordinates distances are calculated from. For generated maps these are the columns and rows
+    private double[] siteXs;
+    private double[] siteYs;
+    private DistanceMetric metric = DistanceMetric.EUCLIDEAN;
+    // Whether itineraries return to the first site at the end
+    private boolean isClosedTour = false;
+    // Optional dense distance matrix, row-major by site
+    private double[] distances = null;
+    // Nearest neighbors of each site, built on first use
+    private int[] neighbors = null;
+    private int numNeighbors = 0;
 
     /**
      * 
@@ -28,12 +42,6 @@ public class SalesmanMap {
     private SalesmanMap(final int height, final int width) {
         this.height = height;
         this.width = width;
-        map = new byte[height][width];
-        for (int row = 0; row < height; row++) {
-            for (int col = 0; col < width; col++) {
-                map[row][col] = -1;
-            }
-        }
     }
 
     /**
@@ -44,36 +52,55 @@ public class SalesmanMap {
      * @return
      */
     public static SalesmanMap generate(int numPlacesToVisit, int height, int width) {
+        return generate(numPlacesToVisit, height, width, new Rng());
+    }
+
+    /**
+     * 
+     * @param numPlacesToVisit
+     * @param height
+     * @param width
+     * @param random Places the sites, so the same seed gives the same map
+     * @return
+     */
+    static SalesmanMap generate(int numPlacesToVisit, int height, int width, Rng random) {
+        if ((long) height * (long) width < numPlacesToVisit) {
+            throw new RuntimeException("Cannot fit " + numPlacesToVisit + " sites on a map that is " + height + " x " + width);
+        }
+        
         SalesmanMap newMap = new SalesmanMap(height, width);
+        newMap.siteRows = new int[numPlacesToVisit];
+        newMap.siteCols = new int[numPlacesToVisit];
+        
+        // Points already used by a site, encoded as (row * width + col)
+        LongHashSet occupied = new LongHashSet(numPlacesToVisit);
         
         int salesmanCol = 0;
         int salesmanRow = 0;
         
         ADD_SITES:
-        for (byte i = 0; i < numPlacesToVisit; i++) {
+        for (int i = 0; i < numPlacesToVisit; i++) {
             int col = random.nextInt(width);
             int row = random.nextInt(height);
-            try {
-                // If already flagged, set back counter and get next
-                if (newMap.map[row][col] != -1) {
-                    i--;
-                    continue ADD_SITES;
-                }
-                
-                // Start saleman on 'a', or 0
-                if (i == 0) {
-                    salesmanCol = col;
-                    salesmanRow = row;
-                }
-
-                newMap.map[row][col] = (byte)i;
-            } catch (NullPointerException npe) {
-                System.err.println("NullPointerException: col=" + col + "; row=" + row);
-                throw npe;
+            
+            // If already flagged, set back counter and get next
+            if (!occupied.add((long) row * (long) width + (long) col)) {
+                i--;
+                continue ADD_SITES;
             }
+            
+            // Start saleman on 'a', or 0
+            if (i == 0) {
+                salesmanCol = col;
+                salesmanRow = row;
+            }
+
+            newMap.siteRows[i] = row;
+            newMap.siteCols[i] = col;
         }
         
-        newMap.lastSite = (byte)(numPlacesToVisit-1);
+        newMap.lastSite = numPlacesToVisit-1;
+        newMap.setCoordinatesFromSites();
         
         newMap.salesmanCol = salesmanCol;
         newMap.salesmanRow = salesmanRow;
@@ -81,33 +108,185 @@ public class SalesmanMap {
         return newMap;
     }
 
+    /**
+     * <p>Map with sites at the given points. Site 0 is where the salesman starts.</p>
+     * @param height
+     * @param width
+     * @param rows Row of each site
+     * @param cols Column of each site
+     * @return
+     */
+    public static SalesmanMap fromSites(int height, int width, int[] rows, int[] cols) {
+        if (rows.length != cols.length) {
+            throw new RuntimeException("Expected a row and column for every site, instead found " + rows.length + " rows and " + cols.length + " columns");
+        }
+        SalesmanMap newMap = new SalesmanMap(height, width);
+        newMap.siteRows = rows.clone();
+        newMap.siteCols = cols.clone();
+        newMap.lastSite = rows.length - 1;
+        if (rows.length > 0) {
+            newMap.salesmanRow = rows[0];
+            newMap.salesmanCol = cols[0];
+        }
+        newMap.setCoordinatesFromSites();
+        return newMap;
+    }
+
+    /**
+     * <p>Map with sites at arbitrary coordinates, such as a loaded TSPLIB instance. The sites are drawn on a grid at most MAX_DRAWN_SIZE cells across, so several sites can share a cell.</p>
+     * @param xs X coordinate of each site (for GEO, latitude in DDD.MM)
+     * @param ys Y coordinate of each site (for GEO, longitude in DDD.MM)
+     * @param metric Any but EXPLICIT
+     * @return
+     */
+    public static SalesmanMap fromCoordinates(double[] xs, double[] ys, DistanceMetric metric) {
+        if (xs.length != ys.length) {
+            throw new RuntimeException("Expected an x and y coordinate for every site, instead found " + xs.length + " and " + ys.length);
+        }
+        if (metric == DistanceMetric.EXPLICIT) {
+            throw new RuntimeException("A map with explicit distances needs a distance matrix");
+        }
+        SalesmanMap newMap = fromDrawing(xs, ys);
+        newMap.metric = metric;
+        if (metric == DistanceMetric.GEO) {
+            newMap.siteXs = new double[xs.length];
+            newMap.siteYs = new double[ys.length];
+            for (int site = 0; site < xs.length; site++) {
+                newMap.siteXs[site] = DistanceMetric.toGeoRadians(xs[site]);
+                newMap.siteYs[site] = DistanceMetric.toGeoRadians(ys[site]);
+            }
+        } else {
+            newMap.siteXs = xs.clone();
+            newMap.siteYs = ys.clone();
+        }
+        return newMap;
+    }
+
+    /**
+     * <p>Map whose distances are given rather than calculated.</p>
+     * @param matrix Row-major, numSites x numSites, symmetric
+     * @param numSites
+     * @param xs Where to draw each site, or null to draw every site in one cell
+     * @param ys
+     * @return
+     */
+    public static SalesmanMap fromMatrix(double[] matrix, int numSites, double[] xs, double[] ys) {
+        if ((long) numSites * (long) numSites != matrix.length) {
+            throw new RuntimeException("Expected " + ((long) numSites * (long) numSites) + " distances for " + numSites + " sites, instead found " + matrix.length);
+        }
+        if (xs == null) {
+            xs = new double[numSites];
+            ys = new double[numSites];
+        }
+        SalesmanMap newMap = fromDrawing(xs, ys);
+        newMap.metric = DistanceMetric.EXPLICIT;
+        newMap.distances = matrix;
+        return newMap;
+    }
+
+    /**
+     * <p>Restore a map from its parts, as written by MigrationProtocol.writeMap.</p>
+     * @return
+     */
+    static SalesmanMap fromParts(int height, int width, int[] rows, int[] cols, double[] xs, double[] ys, DistanceMetric metric, double[] matrix, boolean isClosedTour) {
+        SalesmanMap newMap = fromSites(height, width, rows, cols);
+        newMap.metric = metric;
+        if (metric == DistanceMetric.EXPLICIT) {
+            newMap.distances = matrix;
+        } else {
+            newMap.siteXs = xs;
+            newMap.siteYs = ys;
+        }
+        newMap.isClosedTour = isClosedTour;
+        return newMap;
+    }
+
+    /**
+     * <p>Place the sites on the drawing grid, shifted so the smallest coordinates are at row and column 0.</p>
+     * @param xs
+     * @param ys
+     * @return
+     */
+    private static SalesmanMap fromDrawing(double[] xs, double[] ys) {
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int site = 0; site < xs.length; site++) {
+            minX = Math.min(minX, xs[site]);
+            maxX = Math.max(maxX, xs[site]);
+            minY = Math.min(minY, ys[site]);
+            maxY = Math.max(maxY, ys[site]);
+        }
+        final double scale = Math.max(1.0, Math.max(maxX - minX, maxY - minY) / (MAX_DRAWN_SIZE - 1));
+
+        int[] rows = new int[xs.length];
+        int[] cols = new int[xs.length];
+        int height = 1;
+        int width = 1;
+        for (int site = 0; site < xs.length; site++) {
+            rows[site] = (int) Math.round((ys[site] - minY) / scale);
+            cols[site] = (int) Math.round((xs[site] - minX) / scale);
+            height = Math.max(height, rows[site] + 1);
+            width = Math.max(width, cols[site] + 1);
+        }
+        return fromSites(height, width, rows, cols);
+    }
+
+    private void setCoordinatesFromSites() {
+        siteXs = new double[siteCols.length];
+        siteYs = new double[siteRows.length];
+        for (int site = 0; site < siteRows.length; site++) {
+            siteXs[site] = siteCols[site];
+            siteYs[site] = siteRows[site];
+        }
+    }
+
     @Override()
     public String toString() {
         return toString(false);
     }
     
     public String toString(boolean showSalesman) {
-        StringBuffer mapBuffer = new StringBuffer();
-
-        for (int col = 0; col < this.height; col++) {
-            for (int row = 0; row < this.width; row++) {
-                byte val = map[col][row];
-                if (val != -1) {
-                    // If the salesman is currently on the site
-                    if (salesmanCol == row && salesmanRow == col && showSalesman) {
-                        mapBuffer.append("^");
-                    } else {
-                        mapBuffer.append(convertByteToChar(val));
-                    }
-                } else {
-                    // If the salesman is currently on non-site
-                    if (salesmanCol == row && salesmanRow == col && showSalesman) {
-                        mapBuffer.append("^");
-                    } else {
-                        mapBuffer.append(".");
-                    }
-                }
+        return toString(showSalesman, 0, 0, height, width);
+    }
+    
+    /**
+     * <p>Render part of the map. The text is built on demand, so large maps can be viewed a window at a time.</p>
+     * @param showSalesman
+     * @param firstRow Top row of the viewport
+     * @param firstCol Left-most column of the viewport
+     * @param rows Height of the viewport
+     * @param cols Width of the viewport
+     * @return
+     */
+    public String toString(boolean showSalesman, int firstRow, int firstCol, int rows, int cols) {
+        rows = Math.max(0, Math.min(rows, height - firstRow));
+        cols = Math.max(0, Math.min(cols, width - firstCol));
+        
+        char[][] viewport = new char[rows][cols];
+        for (char[] line : viewport) {
+            Arrays.fill(line, '.');
+        }
+        
+        for (int site = 0; site < siteRows.length; site++) {
+            int row = siteRows[site] - firstRow;
+            int col = siteCols[site] - firstCol;
+            if (row >= 0 && row < rows && col >= 0 && col < cols) {
+                viewport[row][col] = convertSiteToChar(site);
             }
+        }
+        
+        // If the salesman is currently in view
+        int row = salesmanRow - firstRow;
+        int col = salesmanCol - firstCol;
+        if (showSalesman && row >= 0 && row < rows && col >= 0 && col < cols) {
+            viewport[row][col] = '^';
+        }
+        
+        StringBuffer mapBuffer = new StringBuffer(rows * (cols + 1));
+        for (char[] line : viewport) {
+            mapBuffer.append(line);
             mapBuffer.append("\n");
         }
 
@@ -133,51 +312,265 @@ public class SalesmanMap {
         return (char)(val+97);
     }
     
-    public double getDistance(int start, int dest) {
-        return getDistance((byte)start, (byte)dest);
+    /**
+     * <p>Sites past 'z' don't have a letter, so they are drawn as '#' on the map.</p>
+     * @param site
+     * @return
+     */
+    public static char convertSiteToChar(int site) {
+        if (site < 26) {
+            return convertByteToChar(site);
+        }
+        return '#';
     }
     
-    public double getDistance(byte start, byte dest) {
-        
-        int startCol = -1;
-        int startRow = -1;
-        
-        int destCol = -1;
-        int destRow = -1;
-        
-        FIND_SITES:
-        for (int row = 0; row < height; row++) {
-            for (int col = 0; col < width; col++) {
-                if (map[row][col] == start) {
-                    startRow = row;
-                    startCol = col;
-                    
-                    // Short-cut: if find both, exit
-                    if (startCol != -1 && destCol != -1) {
-                        break FIND_SITES;
+    /**
+     * <p>Name of site for printing itineraries. Uses letters when every site has one, otherwise the site number.</p>
+     * @param site
+     * @param numSites
+     * @return
+     */
+    public static String getSiteName(int site, int numSites) {
+        if (numSites <= 26) {
+            return String.valueOf(convertByteToChar(site));
+        }
+        return String.valueOf(site);
+    }
+    
+    /**
+     * <p>Precompute the distance between every pair of sites so getDistance is a single array lookup. Costs (sites * sites) doubles of memory.</p>
+     */
+    public void precomputeDistances() {
+        if (distances != null) {
+            return;
+        }
+        final int numSites = siteRows.length;
+        if ((long) numSites * (long) numSites > Integer.MAX_VALUE) {
+            throw new RuntimeException("Too many sites for a distance matrix: " + numSites);
+        }
+        double[] matrix = new double[numSites * numSites];
+        for (int start = 0; start < numSites; start++) {
+            for (int dest = start + 1; dest < numSites; dest++) {
+                double distance = calculateDistance(start, dest);
+                matrix[start * numSites + dest] = distance;
+                matrix[dest * numSites + start] = distance;
+            }
+        }
+        distances = matrix;
+    }
+
+    /**
+     * 
+     * @return True if precomputeDistances was called, or the distances were given
+     */
+    public boolean hasDistanceMatrix() {
+        return distances != null;
+    }
+    
+    public double getDistance(int start, int dest) {
+        if (distances != null) {
+            return distances[start * siteRows.length + dest];
+        }
+        return calculateDistance(start, dest);
+    }
+
+    /**
+     * 
+     * @param start
+     * @param dest
+     * @return Distance between the two sites under the map's metric
+     */
+    private double calculateDistance(int start, int dest) {
+        return metric.distance(siteXs[start], siteYs[start], siteXs[dest], siteYs[dest]);
+    }
+
+    /**
+     * <p>The nearest sites to each site, closest first. Neighbors of site s are at s * numNeighbors to (s + 1) * numNeighbors - 1.</p>
+     * <p>Built on first use, and shared by every thread using the map. Sites are bucketed into a grid of about two sites per cell, and only cells that could hold a nearer site are searched, so building takes about (sites * numNeighbors) time. Metrics that aren't a rounding of the straight-line distance (GEO, EXPLICIT) compare every pair of sites instead.</p>
+     * @param numNeighbors At most the number of sites - 1
+     * @return
+     */
+    public synchronized int[] getNeighbors(int numNeighbors) {
+        if (neighbors == null || this.numNeighbors != numNeighbors) {
+            neighbors = calculateNeighbors(numNeighbors);
+            this.numNeighbors = numNeighbors;
+        }
+        return neighbors;
+    }
+
+    private int[] calculateNeighbors(int numNeighbors) {
+        final int numSites = siteRows.length;
+        int[] result = new int[numSites * numNeighbors];
+        if (numNeighbors == 0) {
+            return result;
+        }
+        if (!metric.isMonotoneEuclidean()) {
+            return calculateNeighborsByComparingAll(numNeighbors);
+        }
+
+        // Rows are y coordinates and columns are x coordinates
+        double minRow = Double.POSITIVE_INFINITY;
+        double maxRow = Double.NEGATIVE_INFINITY;
+        double minCol = Double.POSITIVE_INFINITY;
+        double maxCol = Double.NEGATIVE_INFINITY;
+        for (int site = 0; site < numSites; site++) {
+            minRow = Math.min(minRow, siteYs[site]);
+            maxRow = Math.max(maxRow, siteYs[site]);
+            minCol = Math.min(minCol, siteXs[site]);
+            maxCol = Math.max(maxCol, siteXs[site]);
+        }
+
+        // Bucket the sites into cells (counting sort by cell)
+        final int cells = Math.max(1, (int) Math.sqrt(numSites / 2.0));
+        final double cellHeight = (maxRow - minRow + 1) / (double) cells;
+        final double cellWidth = (maxCol - minCol + 1) / (double) cells;
+        final double minCellSize = Math.min(cellHeight, cellWidth);
+        int[] siteCells = new int[numSites];
+        int[] cellStart = new int[cells * cells + 1];
+        for (int site = 0; site < numSites; site++) {
+            int cellRow = Math.min(cells - 1, (int) ((siteYs[site] - minRow) / cellHeight));
+            int cellCol = Math.min(cells - 1, (int) ((siteXs[site] - minCol) / cellWidth));
+            siteCells[site] = cellRow * cells + cellCol;
+            cellStart[siteCells[site] + 1]++;
+        }
+        for (int cell = 0; cell < cells * cells; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        int[] cellSites = new int[numSites];
+        int[] cellFill = Arrays.copyOf(cellStart, cells * cells);
+        for (int site = 0; site < numSites; site++) {
+            cellSites[cellFill[siteCells[site]]++] = site;
+        }
+
+        int[] best = new int[numNeighbors];
+        double[] bestDistances = new double[numNeighbors];
+        for (int site = 0; site < numSites; site++) {
+            int found = 0;
+            int cellRow = siteCells[site] / cells;
+            int cellCol = siteCells[site] % cells;
+
+            // Search rings of cells around the site's cell until no unsearched cell can hold a nearer site
+            RINGS:
+            for (int ring = 0; ring < cells; ring++) {
+                for (int row = cellRow - ring; row <= cellRow + ring; row++) {
+                    if (row < 0 || row >= cells) {
+                        continue;
                     }
-                } 
-                if (map[row][col] == dest) {
-                    
-                    destRow = row;
-                    destCol = col;
-                    
-                    // Short-cut: if find both, exit
-                    if (startCol != -1 && destCol != -1) {
-                        break FIND_SITES;
+                    boolean isEdgeRow = (row == cellRow - ring || row == cellRow + ring);
+                    int colStep = isEdgeRow ? 1 : Math.max(1, 2 * ring);
+                    for (int col = cellCol - ring; col <= cellCol + ring; col += colStep) {
+                        if (col < 0 || col >= cells) {
+                            continue;
+                        }
+                        int cell = row * cells + col;
+                        for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                            int other = cellSites[k];
+                            if (other == site) {
+                                continue;
+                            }
+                            // Straight-line distance, which orders sites the same as the metric
+                            double distance = DistanceMetric.EUCLIDEAN.distance(siteXs[site], siteYs[site], siteXs[other], siteYs[other]);
+                            if (found < numNeighbors || distance < bestDistances[found - 1]) {
+                                // Insertion into sorted list of nearest so far
+                                int index = found < numNeighbors ? found++ : found - 1;
+                                while (index > 0 && bestDistances[index - 1] > distance) {
+                                    best[index] = best[index - 1];
+                                    bestDistances[index] = bestDistances[index - 1];
+                                    index--;
+                                }
+                                best[index] = other;
+                                bestDistances[index] = distance;
+                            }
+                        }
                     }
                 }
+                if (found == numNeighbors && bestDistances[found - 1] <= ring * minCellSize) {
+                    break RINGS;
+                }
             }
+            System.arraycopy(best, 0, result, site * numNeighbors, numNeighbors);
         }
-        
-        double num1 = Math.pow((double)(destCol-startCol),2);
-        double num2 = Math.pow((double)(destRow-startRow),2);
-        
-        double distance = Math.sqrt(num1+num2);
-        return distance;
+
+        return result;
     }
 
-    public byte getLastSite() {
+    private int[] calculateNeighborsByComparingAll(int numNeighbors) {
+        final int numSites = siteRows.length;
+        int[] result = new int[numSites * numNeighbors];
+        int[] best = new int[numNeighbors];
+        double[] bestDistances = new double[numNeighbors];
+        for (int site = 0; site < numSites; site++) {
+            int found = 0;
+            for (int other = 0; other < numSites; other++) {
+                if (other == site) {
+                    continue;
+                }
+                double distance = getDistance(site, other);
+                if (found < numNeighbors || distance < bestDistances[found - 1]) {
+                    int index = found < numNeighbors ? found++ : found - 1;
+                    while (index > 0 && bestDistances[index - 1] > distance) {
+                        best[index] = best[index - 1];
+                        bestDistances[index] = bestDistances[index - 1];
+                        index--;
+                    }
+                    best[index] = other;
+                    bestDistances[index] = distance;
+                }
+            }
+            System.arraycopy(best, 0, result, site * numNeighbors, numNeighbors);
+        }
+        return result;
+    }
+
+    public int getLastSite() {
         return lastSite;
     }
+
+    public int getNumSites() {
+        return lastSite + 1;
+    }
+
+    public int getSiteRow(int site) {
+        return siteRows[site];
+    }
+
+    public int getSiteCol(int site) {
+        return siteCols[site];
+    }
+
+    double getSiteX(int site) {
+        return siteXs[site];
+    }
+
+    double getSiteY(int site) {
+        return siteYs[site];
+    }
+
+    public DistanceMetric getMetric() {
+        return metric;
+    }
+
+    /**
+     * 
+     * @return True if itineraries return to the first site, so their total travel includes the edge from the last site back to the first
+     */
+    public boolean isClosedTour() {
+        return isClosedTour;
+    }
+
+    /**
+     * <p>Set before any itineraries are scored.</p>
+     * @param isClosedTour
+     */
+    public void setClosedTour(boolean isClosedTour) {
+        this.isClosedTour = isClosedTour;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getWidth() {
+        return width;
+    }
 }
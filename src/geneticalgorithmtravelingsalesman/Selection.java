@@ -0,0 +1,177 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+
+/**
+ * <p>Picks pairs of parents from the mating pool (the fittest of the population, by rank).</p>
+ * <p>Anything that only depends on the generation is worked out once in prepare, so picking a parent takes constant time (tournament: time proportional to the tournament size) and allocates nothing. After prepare, only reads its tables, so one instance is shared by all breeders.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class Selection {
+
+    private final SelectionScheme scheme;
+    private final int matingPoolSize;
+    private final int tournamentSize;
+    // Alias table for rank weights (Vose's method)
+    private final double[] probability;
+    private final int[] alias;
+    // Parents for every child of the generation, for stochastic universal sampling
+    private final int[] samples;
+
+    /**
+     * 
+     * @param config
+     */
+    Selection(GeneticAlgorithmConfig config) {
+        this.scheme = config.getSelection();
+        this.matingPoolSize = config.getNumFitestToMate();
+        this.tournamentSize = Math.max(1, config.getTournamentSize());
+
+        if (matingPoolSize < 2) {
+            throw new RuntimeException("Requires a mating pool of size 2, instead found: " + matingPoolSize);
+        }
+
+        this.probability = new double[matingPoolSize];
+        this.alias = new int[matingPoolSize];
+        this.samples = scheme == SelectionScheme.SUS ? new int[config.getPopulationSize() * 2] : null;
+
+        // Rank weights never change, so the alias table is only built once
+        buildAliasTable();
+    }
+
+    /**
+     * <p>Rank weight of the fittest is n, down to 1 for the least fit.</p>
+     */
+    private double getWeight(int rank) {
+        return matingPoolSize - rank;
+    }
+
+    private void buildAliasTable() {
+        double totalWeight = (double) matingPoolSize * (matingPoolSize + 1) / 2.0;
+        int[] small = new int[matingPoolSize];
+        int[] large = new int[matingPoolSize];
+        int numSmall = 0;
+        int numLarge = 0;
+        for (int rank = 0; rank < matingPoolSize; rank++) {
+            probability[rank] = getWeight(rank) * matingPoolSize / totalWeight;
+            if (probability[rank] < 1.0) {
+                small[numSmall++] = rank;
+            } else {
+                large[numLarge++] = rank;
+            }
+        }
+        while (numSmall > 0 && numLarge > 0) {
+            int less = small[--numSmall];
+            int more = large[--numLarge];
+            alias[less] = more;
+            probability[more] = (probability[more] + probability[less]) - 1.0;
+            if (probability[more] < 1.0) {
+                small[numSmall++] = more;
+            } else {
+                large[numLarge++] = more;
+            }
+        }
+        // Left over only due to rounding
+        while (numLarge > 0) {
+            probability[large[--numLarge]] = 1.0;
+        }
+        while (numSmall > 0) {
+            probability[small[--numSmall]] = 1.0;
+        }
+    }
+
+    /**
+     * <p>Work done once per generation, before any breeding. Call from a single thread.</p>
+     * @param random
+     */
+    void prepare(Rng random) {
+        if (scheme != SelectionScheme.SUS) {
+            return;
+        }
+
+        // Evenly spaced pointers over the cumulative rank weights, from a single random start
+        double totalWeight = (double) matingPoolSize * (matingPoolSize + 1) / 2.0;
+        double spacing = totalWeight / samples.length;
+        double pointer = random.nextDouble() * spacing;
+        double cumulative = getWeight(0);
+        int rank = 0;
+        for (int i = 0; i < samples.length; i++) {
+            while (pointer >= cumulative && rank < matingPoolSize - 1) {
+                rank++;
+                cumulative += getWeight(rank);
+            }
+            samples[i] = rank;
+            pointer += spacing;
+        }
+
+        // Shuffle so parents are paired at random
+        for (int i = samples.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = samples[i];
+            samples[i] = samples[j];
+            samples[j] = temp;
+        }
+    }
+
+    /**
+     * 
+     * @param random Random number generator of the calling breeder
+     * @param child Index of the child in the next generation
+     * @param parents Set to the ranks of two different parents in the mating pool
+     */
+    void pickTwoParents(Rng random, int child, int[] parents) {
+        if (scheme == SelectionScheme.SUS) {
+            parents[0] = samples[child * 2];
+            parents[1] = samples[child * 2 + 1];
+            if (parents[0] == parents[1]) {
+                // Same parent drawn twice, so swap in one picked by rank instead
+                do {
+                    parents[1] = pickByRank(random);
+                } while (parents[1] == parents[0]);
+            }
+            return;
+        }
+
+        if (scheme == SelectionScheme.TOURNAMENT) {
+            // Redrawing until the parents differ could take forever with large tournaments, which nearly always
+            // return the fittest. So the second tournament is over the rest of the pool, skipping the first parent.
+            parents[0] = pickByTournament(random, matingPoolSize);
+            parents[1] = pickByTournament(random, matingPoolSize - 1);
+            if (parents[1] >= parents[0]) {
+                parents[1]++;
+            }
+            return;
+        }
+
+        parents[0] = pickByRank(random);
+        do {
+            parents[1] = pickByRank(random);
+        } while (parents[1] == parents[0]);
+    }
+
+    /**
+     * 
+     * @param random
+     * @param poolSize Tournament is over ranks 0 to poolSize - 1
+     * @return
+     */
+    private int pickByTournament(Rng random, int poolSize) {
+        // Mating pool is sorted, so fittest is the lowest rank
+        int winner = random.nextInt(poolSize);
+        for (int i = 1; i < tournamentSize; i++) {
+            winner = Math.min(winner, random.nextInt(poolSize));
+        }
+        return winner;
+    }
+
+    private int pickByRank(Rng random) {
+        int rank = random.nextInt(matingPoolSize);
+        if (random.nextDouble() < probability[rank]) {
+            return rank;
+        }
+        return alias[rank];
+    }
+}
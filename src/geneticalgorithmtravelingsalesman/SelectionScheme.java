@@ -0,0 +1,38 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+/**
+ * <p>Ways to pick parents from the mating pool. See Selection.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+public enum SelectionScheme {
+
+    /**
+     * <p>Rank selection: the fittest of n in the mating pool is weighted n, the next n-1, down to 1 for the least fit. Drawn in constant time from an alias table.</p>
+     */
+    RANK,
+    /**
+     * <p>Tournament selection: the fittest of a few members of the mating pool picked at random.</p>
+     */
+    TOURNAMENT,
+    /**
+     * <p>Stochastic universal sampling: every parent for the generation is drawn at once with rank weights, using evenly spaced pointers, then shuffled into pairs.</p>
+     */
+    SUS;
+
+    /**
+     * 
+     * @param name Case-insensitive
+     * @return
+     */
+    static SelectionScheme parse(String name) {
+        try {
+            return valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown selection scheme: " + name);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+/**
+ * <p>An itinerary found by a solve, with its total travel. Immutable.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+public final class Solution {
+
+    private final int[] itinerary;
+    private final double distance;
+    private final int generation;
+
+    /**
+     *
+     * @param itinerary Kept, so must not be changed by the caller
+     * @param distance
+     * @param generation
+     */
+    Solution(int[] itinerary, double distance, int generation) {
+        this.itinerary = itinerary;
+        this.distance = distance;
+        this.generation = generation;
+    }
+
+    /**
+     *
+     * @return Sites in the order visited, starting wherever the genetic algorithm left it, not necessarily at site 0. Each site appears once. A copy, so can be changed.
+     */
+    public int[] getItinerary() {
+        return itinerary.clone();
+    }
+
+    /**
+     *
+     * @return Total travel, including the edge back to the first site if the map has closed tours
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     *
+     * @return Generation the itinerary was found in, starting at 0
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    @Override()
+    public String toString() {
+        return Itineraries.itineraryToString(itinerary) + " -> " + distance;
+    }
+}
@@ -0,0 +1,18 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+/**
+ * <p>Receives each improvement to the best itinerary of a solve, as it is found. Called from the thread running the solve, which waits for it to return, so it should be quick.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+public interface SolutionListener {
+
+    /**
+     *
+     * @param best Shorter than any before it in the same solve
+     */
+    void improved(Solution best);
+}
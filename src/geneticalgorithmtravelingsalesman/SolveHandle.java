@@ -0,0 +1,86 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * <p>A solve started by Solver. Completes with the shortest itinerary found once the genetic algorithm stops: after its last generation, on reaching the config's target distance or time limit, or when stop is called.</p>
+ * <p>Completing it any other way, e.g. with cancel, stops the genetic algorithm after the generation it is running.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+public class SolveHandle extends CompletableFuture<Solution> {
+
+    private final GeneticAlgorithm algorithm;
+    private volatile Solution bestSoFar = null;
+    private volatile int generationsRun = 0;
+    private volatile String stopReason = null;
+
+    SolveHandle(GeneticAlgorithm algorithm) {
+        this.algorithm = algorithm;
+        whenComplete(new BiConsumer<Solution, Throwable>() {
+
+            public void accept(Solution solution, Throwable error) {
+                SolveHandle.this.algorithm.requestStop();
+            }
+        });
+    }
+
+    /**
+     * <p>Finish after the generation being run, completing normally with the shortest itinerary found so far. Unlike cancel, the solve still has a result.</p>
+     */
+    public void stop() {
+        algorithm.requestStop();
+    }
+
+    /**
+     *
+     * @return Shortest itinerary found so far, or null if the first generation hasn't finished
+     */
+    public Solution getBestSoFar() {
+        return bestSoFar;
+    }
+
+    /**
+     *
+     * @return Generations run, once complete
+     */
+    public int getGenerationsRun() {
+        return generationsRun;
+    }
+
+    /**
+     *
+     * @return Why the solve stopped before its last generation, or null if it didn't (or hasn't finished)
+     */
+    public String getStopReason() {
+        return stopReason;
+    }
+
+    /**
+     *
+     * @param best
+     */
+    void improved(Solution best) {
+        this.bestSoFar = best;
+    }
+
+    /**
+     * <p>Complete with the shortest itinerary found, which is the best so far unless the final generation did better (it can't with elitism).</p>
+     * @param finalItinerary Best of the final generation
+     * @param finalDistance
+     */
+    void finished(int[] finalItinerary, double finalDistance) {
+        this.generationsRun = algorithm.getGenerationsRun();
+        this.stopReason = algorithm.getStopReason();
+        Solution best = bestSoFar;
+        if (best == null || finalDistance < best.getDistance()) {
+            best = new Solution(finalItinerary.clone(), finalDistance, generationsRun - 1);
+            this.bestSoFar = best;
+        }
+        complete(best);
+    }
+}
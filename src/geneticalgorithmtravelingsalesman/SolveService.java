@@ -0,0 +1,472 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * <p>Solves itineraries for other programs over HTTP, so they don't have to start a JVM per solve.</p>
+ * <p>POST /solve with the sites as JSON, {"sites": [[x, y], ...]}, or as application/octet-stream: the number of sites (a 4-byte int), then each site's x and y (8-byte doubles), big-endian. Optional parameters go in the query string or, for JSON, alongside "sites": metric, closed, timelimit (milliseconds), generations, population and seed. The response is JSON: {"distance": ..., "tour": [0, ...], "generations": ..., "stopReason": ..., "millis": ...}.</p>
+ * <p>GET /status returns counts of requests, as JSON.</p>
+ * <p>At most threads + queue requests are admitted at once. Past that, requests are refused straight away with 503 and Retry-After, rather than waiting. Each request has a time budget, at most the server's, which counts from when it was admitted. Instances of at most batchSites sites are gathered into batches: while the workers are busy, small requests join the latest batch not yet started, so a whole batch takes one place in the queue and one worker.</p>
+ * <p>A batch runs its solves one after another, so each fits in one server budget: a batched request's own budget is at most a MAX_BATCH-th of the server's, and that is its default. A small request that asks for more isn't batched. Each batched solve's deadline also counts the budgets of those ahead of it in its batch, which finish within theirs, so it gets its own budget to search rather than starting with it spent. Its response still comes within the server's budget of being admitted.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class SolveService {
+
+    static final int MAX_BATCH = 16;
+    // Population times sites a request can ask for. Two populations of this many ints take 128 MB.
+    static final long MAX_POPULATION_SITES = 1L << 24;
+    private final GeneticAlgorithmConfig template;
+    private final int maxSites;
+    private final int batchSites;
+    private final long maxTimeLimitMillis;
+    private final long batchTimeLimitMillis;
+    private final int capacity;
+    private final Semaphore admissions;
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService httpPool;
+    private final Solver solver;
+    private final Solver batchSolver;
+    private final Object batchLock = new Object();
+    private Batch openBatch = null;
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private HttpServer server = null;
+
+    /**
+     *
+     * @param template Parameters of every solve, unless the request sets them. One worker and one island.
+     * @param threads Solves (or batches of small solves) run at once
+     * @param queue Requests admitted beyond those running
+     * @param maxSites Larger requests are refused
+     * @param batchSites Requests with at most this many sites are batched
+     * @param maxTimeLimitMillis Longest time budget a request can have, and the budget of those that don't ask, unless batched
+     */
+    SolveService(GeneticAlgorithmConfig template, int threads, int queue, int maxSites, int batchSites, long maxTimeLimitMillis) {
+        if (template.getWorkers() > 1 || template.getIslands() > 1) {
+            throw new RuntimeException("The solve service runs each solve on one thread, so can't have more than one worker or island. Use -t for more solves at once.");
+        }
+        if (threads < 1 || queue < 0 || maxSites < 1 || maxTimeLimitMillis <= 0) {
+            throw new RuntimeException("The solve service needs at least one thread, a queue of zero or more, at least one site and a time limit");
+        }
+        this.template = template;
+        this.maxSites = maxSites;
+        this.batchSites = batchSites;
+        this.maxTimeLimitMillis = maxTimeLimitMillis;
+        this.batchTimeLimitMillis = Math.max(1, maxTimeLimitMillis / MAX_BATCH);
+        this.capacity = threads + queue;
+        this.admissions = new Semaphore(capacity);
+        // Unbounded, but never holds more than capacity tasks, as each holds at least one admitted request
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        this.httpPool = Executors.newFixedThreadPool(Math.max(2, threads));
+        this.solver = new Solver(workers);
+        this.batchSolver = new Solver(new Executor() {
+
+            // Only called by solveInBatch, which holds batchLock and has opened a batch
+            public void execute(Runnable task) {
+                openBatch.tasks.add(task);
+            }
+        });
+    }
+
+    /**
+     *
+     * @param address Where to listen
+     * @throws IOException
+     */
+    void start(InetSocketAddress address) throws IOException {
+        server = HttpServer.create(address, capacity);
+        server.setExecutor(httpPool);
+        server.createContext("/solve", new HttpHandler() {
+
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    handleSolve(exchange);
+                } catch (RuntimeException e) {
+                    respond(exchange, 500, errorJson(e.toString()));
+                }
+            }
+        });
+        server.createContext("/status", new HttpHandler() {
+
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 200, getStatusJson());
+            }
+        });
+        server.start();
+    }
+
+    /**
+     *
+     * @return Where the service is listening, with the actual port if started on port 0
+     */
+    InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * <p>Stop listening and drop queued solves. Running solves finish, within their time budget.</p>
+     */
+    void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        workers.shutdownNow();
+        httpPool.shutdown();
+    }
+
+    private void handleSolve(final HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            respond(exchange, 405, errorJson("Use POST"));
+            return;
+        }
+        final long received = System.nanoTime();
+
+        final Request request;
+        try {
+            request = readRequest(exchange);
+        } catch (TooLargeException e) {
+            respond(exchange, 413, errorJson(e.getMessage()));
+            return;
+        } catch (RuntimeException e) {
+            respond(exchange, 400, errorJson(e.getMessage()));
+            return;
+        }
+
+        if (!admissions.tryAcquire()) {
+            rejected.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 503, errorJson("Too many requests: " + capacity + " already admitted"));
+            return;
+        }
+        SolveHandle handle;
+        try {
+            if (request.map.getNumSites() <= batchSites && request.config.getTimeLimitMillis() <= batchTimeLimitMillis) {
+                handle = solveInBatch(request);
+            } else {
+                handle = solver.solve(request.map, request.config, request.seed, null);
+            }
+        } catch (RejectedExecutionException e) {
+            admissions.release();
+            rejected.incrementAndGet();
+            respond(exchange, 503, errorJson("Shutting down"));
+            return;
+        } catch (RuntimeException e) {
+            // readRequest should have refused anything the genetic algorithm can't run, but if not, the place must still be given back
+            admissions.release();
+            throw e;
+        }
+        accepted.incrementAndGet();
+
+        final SolveHandle finalHandle = handle;
+        handle.whenCompleteAsync(new BiConsumer<Solution, Throwable>() {
+
+            public void accept(Solution solution, Throwable error) {
+                admissions.release();
+                try {
+                    if (error != null) {
+                        failed.incrementAndGet();
+                        respond(exchange, 500, errorJson(String.valueOf(error)));
+                        return;
+                    }
+                    completed.incrementAndGet();
+                    StringBuilder json = new StringBuilder();
+                    json.append("{\"distance\":").append(solution.getDistance());
+                    json.append(",\"tour\":[");
+                    int[] tour = solution.getItinerary();
+                    for (int index = 0; index < tour.length; index++) {
+                        json.append(index > 0 ? "," : "").append(tour[index]);
+                    }
+                    json.append("],\"generations\":").append(finalHandle.getGenerationsRun());
+                    json.append(",\"stopReason\":");
+                    appendString(json, finalHandle.getStopReason());
+                    json.append(",\"millis\":").append((System.nanoTime() - received) / 1000000);
+                    json.append('}');
+                    respond(exchange, 200, json.toString());
+                } catch (IOException e) {
+                    // Client went away. Nothing to do.
+                    exchange.close();
+                }
+            }
+        }, httpPool);
+    }
+
+    /**
+     *
+     * @param exchange
+     * @return Map and config of the request
+     * @throws IOException
+     */
+    private Request readRequest(HttpExchange exchange) throws IOException {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+                }
+            }
+        }
+
+        // About 50 bytes a site as JSON, and 16 as binary
+        byte[] body = readBody(exchange.getRequestBody(), 4096 + 64L * maxSites);
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        double[] xs;
+        double[] ys;
+        if (contentType != null && contentType.startsWith("application/octet-stream")) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+            try {
+                int numSites = in.readInt();
+                checkNumSites(numSites);
+                xs = new double[numSites];
+                ys = new double[numSites];
+                for (int site = 0; site < numSites; site++) {
+                    xs[site] = in.readDouble();
+                    ys[site] = in.readDouble();
+                }
+            } catch (EOFException e) {
+                throw new RuntimeException("Expected more sites in the request");
+            }
+        } else {
+            Object json = JsonReader.parse(new String(body, "UTF-8"));
+            if (!(json instanceof Map)) {
+                throw new RuntimeException("Expected a JSON object with \"sites\"");
+            }
+            Map<?, ?> object = (Map<?, ?>) json;
+            Object sites = object.get("sites");
+            if (!(sites instanceof List)) {
+                throw new RuntimeException("Expected \"sites\" to be an array of [x, y]");
+            }
+            List<?> list = (List<?>) sites;
+            checkNumSites(list.size());
+            xs = new double[list.size()];
+            ys = new double[list.size()];
+            for (int site = 0; site < list.size(); site++) {
+                Object pair = list.get(site);
+                if (!(pair instanceof List) || ((List<?>) pair).size() != 2 || !(((List<?>) pair).get(0) instanceof Double) || !(((List<?>) pair).get(1) instanceof Double)) {
+                    throw new RuntimeException("Expected site " + site + " to be [x, y]");
+                }
+                xs[site] = (Double) ((List<?>) pair).get(0);
+                ys[site] = (Double) ((List<?>) pair).get(1);
+            }
+            // JSON names are always strings
+            for (Map.Entry<?, ?> entry : object.entrySet()) {
+                if (!entry.getKey().equals("sites")) {
+                    parameters.put((String) entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        for (int site = 0; site < xs.length; site++) {
+            if (Double.isNaN(xs[site]) || Double.isInfinite(xs[site]) || Double.isNaN(ys[site]) || Double.isInfinite(ys[site])) {
+                throw new RuntimeException("Expected finite coordinates for site " + site);
+            }
+        }
+
+        Request request = new Request();
+        request.map = SalesmanMap.fromCoordinates(xs, ys, parameters.containsKey("metric") ? DistanceMetric.parse(String.valueOf(parameters.get("metric"))) : DistanceMetric.EUCLIDEAN);
+        request.map.setClosedTour(parameters.containsKey("closed") && Boolean.parseBoolean(String.valueOf(parameters.get("closed"))));
+        request.config = template.copy();
+        long timeLimit = parameters.containsKey("timelimit") ? getLong(parameters, "timelimit") : xs.length <= batchSites ? batchTimeLimitMillis : maxTimeLimitMillis;
+        request.config.setTimeLimitMillis(timeLimit > 0 && timeLimit < maxTimeLimitMillis ? timeLimit : maxTimeLimitMillis);
+        if (parameters.containsKey("generations")) {
+            request.config.setGenerations((int) Math.min(Integer.MAX_VALUE, getLong(parameters, "generations")));
+        }
+        if (parameters.containsKey("population")) {
+            request.config.setPopulationSize((int) Math.min(Integer.MAX_VALUE, getLong(parameters, "population")));
+        }
+        if (request.config.getGenerations() < 1 || request.config.getPopulationSize() < 2) {
+            throw new RuntimeException("Expected at least 1 generation and a population of at least 2");
+        }
+        if (request.config.getNumFitestToMate() < 2) {
+            throw new RuntimeException("Population too small: the fittest " + request.config.getPercentageMate() * 100 + "% that mate must be at least 2, instead found " + request.config.getNumFitestToMate());
+        }
+        if ((long) request.config.getPopulationSize() * xs.length > MAX_POPULATION_SITES) {
+            throw new TooLargeException("Population times sites can be at most " + MAX_POPULATION_SITES);
+        }
+        request.seed = parameters.containsKey("seed") ? getLong(parameters, "seed") : new Rng().nextLong();
+        return request;
+    }
+
+    private void checkNumSites(int numSites) {
+        if (numSites < 1) {
+            throw new RuntimeException("Expected at least one site");
+        } else if (numSites > maxSites) {
+            throw new TooLargeException("At most " + maxSites + " sites, instead found " + numSites);
+        }
+    }
+
+    private static long getLong(Map<String, Object> parameters, String name) {
+        Object value = parameters.get(name);
+        try {
+            return value instanceof Double ? (long) (double) (Double) value : Long.parseLong(String.valueOf(value));
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Expected a whole number for " + name + ", instead found: " + value);
+        }
+    }
+
+    /**
+     *
+     * @param in
+     * @param limit
+     * @return Whole body
+     * @throws IOException
+     */
+    private static byte[] readBody(InputStream in, long limit) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+            if (body.size() > limit) {
+                throw new TooLargeException("Request larger than " + limit + " bytes");
+            }
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * <p>Add a small solve to the batch that hasn't started, or start a new batch if there is none or it is full.</p>
+     * @param request Time limit at most batchTimeLimitMillis. Extended by the budgets ahead of it in the batch.
+     * @return
+     */
+    private SolveHandle solveInBatch(Request request) {
+        synchronized (batchLock) {
+            if (openBatch == null || openBatch.isStarted || openBatch.tasks.size() == MAX_BATCH) {
+                Batch batch = new Batch();
+                // Can't start until this releases the lock, so sees the task
+                workers.execute(batch);
+                openBatch = batch;
+                batches.incrementAndGet();
+            }
+            // Those ahead were admitted earlier, so are done by this solve's admission plus their budgets
+            long budgetMillis = request.config.getTimeLimitMillis();
+            request.config.setTimeLimitMillis(openBatch.budgetMillis + budgetMillis);
+            SolveHandle handle = batchSolver.solve(request.map, request.config, request.seed, null);
+            openBatch.budgetMillis += budgetMillis;
+            return handle;
+        }
+    }
+
+    private String getStatusJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"threads\":").append(workers.getCorePoolSize());
+        json.append(",\"capacity\":").append(capacity);
+        json.append(",\"admitted\":").append(capacity - admissions.availablePermits());
+        json.append(",\"queued\":").append(workers.getQueue().size());
+        json.append(",\"accepted\":").append(accepted.get());
+        json.append(",\"rejected\":").append(rejected.get());
+        json.append(",\"completed\":").append(completed.get());
+        json.append(",\"failed\":").append(failed.get());
+        json.append(",\"batches\":").append(batches.get());
+        json.append('}');
+        return json.toString();
+    }
+
+    private static String errorJson(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        appendString(json, message);
+        return json.append('}').toString();
+    }
+
+    /**
+     *
+     * @param json
+     * @param string Appended as a JSON string, or null
+     */
+    private static void appendString(StringBuilder json, String string) {
+        if (string == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int index = 0; index < string.length(); index++) {
+            char c = string.charAt(index);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static class Request {
+
+        SalesmanMap map;
+        GeneticAlgorithmConfig config;
+        long seed;
+    }
+
+    private static class TooLargeException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        TooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * <p>Small solves run one after another on one worker.</p>
+     */
+    private class Batch implements Runnable {
+
+        private final List<Runnable> tasks = new ArrayList<Runnable>(MAX_BATCH);
+        // Guarded by batchLock
+        private boolean isStarted = false;
+        // Total budget of the tasks. Guarded by batchLock. At most the server's budget.
+        private long budgetMillis = 0;
+
+        public void run() {
+            synchronized (batchLock) {
+                isStarted = true;
+            }
+            for (Runnable task : tasks) {
+                task.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>Runs the genetic algorithm from other code, without Main: many solves at once in one JVM, each on one thread of the caller's executor. Nothing is printed.</p>
+ * <p>For example, with a fixed pool, or on Java 21 and later with Executors.newVirtualThreadPerTaskExecutor():</p>
+ * <pre>
+ * Solver solver = new Solver(executor);
+ * SalesmanMap map = SalesmanMap.fromCoordinates(xs, ys, DistanceMetric.EUCLIDEAN);
+ * GeneticAlgorithmConfig config = new GeneticAlgorithmConfig();
+ * config.setTimeLimitMillis(2000);
+ * SolveHandle handle = solver.solve(map, config, listener);
+ * Solution best = handle.join();
+ * </pre>
+ * <p>The config's time limit is a deadline counted from the call to solve, so includes any time waiting for a thread.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+public class Solver {
+
+    // Prints nothing. Shared by anything that runs the genetic algorithm without output, such as sweeps.
+    static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+
+        public void write(int b) {
+        }
+
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+    private final Executor executor;
+
+    /**
+     *
+     * @param executor Runs each solve as one task, which takes the thread until the solve finishes
+     */
+    public Solver(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     *
+     * @param map Can be shared by solves running at once
+     * @param config Copied, so can be changed or reused once this returns
+     * @param listener Told of each improvement on the solve's thread. May be null.
+     * @return Handle to the solve, which has been given to the executor
+     */
+    public SolveHandle solve(SalesmanMap map, GeneticAlgorithmConfig config, SolutionListener listener) {
+        return solve(map, config, new Rng(), listener);
+    }
+
+    /**
+     *
+     * @param map
+     * @param config
+     * @param seed Solves with the same map, config and seed find the same itineraries, unless stopped by time
+     * @param listener May be null
+     * @return
+     */
+    public SolveHandle solve(SalesmanMap map, GeneticAlgorithmConfig config, long seed, SolutionListener listener) {
+        return solve(map, config, new Rng(seed), listener);
+    }
+
+    private SolveHandle solve(SalesmanMap map, GeneticAlgorithmConfig config, Rng random, final SolutionListener listener) {
+        if (config.getWorkers() > 1 || config.getIslands() > 1) {
+            throw new IllegalArgumentException("Each solve runs on one thread, so can't have more than one worker or island. Run more solves at once instead.");
+        }
+        final GeneticAlgorithmConfig copy = config.copy();
+        copy.setPrintBestOfEachGeneration(false);
+
+        final GeneticAlgorithm algorithm = new GeneticAlgorithm(map, copy, null, random, DISCARD);
+        final SolveHandle handle = new SolveHandle(algorithm);
+        algorithm.setQueuedNanos(System.nanoTime());
+        algorithm.setSolutionListener(new SolutionListener() {
+
+            public void improved(Solution best) {
+                handle.improved(best);
+                if (listener != null) {
+                    listener.improved(best);
+                }
+            }
+        });
+
+        executor.execute(new Runnable() {
+
+            public void run() {
+                // Cancelled while waiting for a thread
+                if (handle.isDone()) {
+                    return;
+                }
+                try {
+                    double distance = algorithm.run();
+                    handle.finished(algorithm.getBestSolution(), distance);
+                } catch (Throwable e) {
+                    handle.completeExceptionally(e);
+                }
+            }
+        });
+        return handle;
+    }
+}
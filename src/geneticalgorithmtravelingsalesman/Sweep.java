@@ -0,0 +1,532 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Runs many configurations of the genetic algorithm in one process, on one map, to tune its parameters.</p>
+ * <p>A spec file lists the values of each parameter to try, using the long option names, one per line:</p>
+ * <pre>
+ * search = grid            (or random)
+ * samples = 50             (configurations to draw, for random search)
+ * replications = 5         (runs of each configuration, each with its own seed)
+ * population = 20, 40, 80
+ * mutationrate = 0.01..0.2 (a range, for random search)
+ * </pre>
+ * <p>Grid search runs every combination of the listed values; random search draws each parameter from its values or range. Parameters not in the spec come from the command line. Every configuration runs with the same seeds, so they are compared on the same luck.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class Sweep {
+
+    /**
+     * <p>Parameters that can be swept, named as their long command-line options.</p>
+     */
+    private enum Parameter {
+
+        POPULATION(true) {
+
+            void set(GeneticAlgorithmConfig config, String value) {
+                config.setPopulationSize(Integer.parseInt(value));
+            }
+
+            String get(GeneticAlgorithmConfig config) {
+                return String.valueOf(config.getPopulationSize());
+            }
+        },
+        MATEPERCENTAGE(false) {
+
+            void set(GeneticAlgorithmConfig config, String value) {
+                config.setPercentageMate(Double.parseDouble(value));
+            }
+
+            String get(GeneticAlgorithmConfig config) {
+                return String.valueOf(config.getPercentageMate());
+            }
+        },
+        CROSSOVERRATE(false) {
+
+            void set(GeneticAlgorithmConfig config, String value) {
+                config.setCrossOverRate(Double.parseDouble(value));
+            }
+
+            String get(GeneticAlgorithmConfig config) {
+                return String.valueOf(config.getCrossOverRate());
+            }
+        },
+        MUTATIONRATE(false) {
+
+            void set(GeneticAlgorithmConfig config, String value) {
+                config.setMutationRate(Double.parseDouble(value));
+            }
+
+            String get(GeneticAlgorithmConfig config) {
+                return String.valueOf(config.getMutationRate());
+            }
+        },
+        GENERATIONS(true) {
+
+            void set(GeneticAlgorithmConfig config, String value) {
+                config.setGenerations(Integer.parseInt(value));
+            }
+
+            String get(GeneticAlgorithmConfig config) {
+                return String.valueOf(config.getGenerations());
+            }
+        },
+        ELITISM(null) {
+
+            void set(GeneticAlgorithmConfig config, String value) {
+                if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+                    throw new IllegalArgumentException("Expected true or false, instead found: " + value);
+                }
+                config.setElitism(Boolean.parseBoolean(value));
+            }
+
+            String get(GeneticAlgorithmConfig config) {
+                return String.valueOf(config.isElitism());
+            }
+        },
+        CROSSOVER(null) {
+
+            void set(GeneticAlgorithmConfig config, String value) {
+                config.setCrossover(CrossoverOperator.parse(value));
+            }
+
+            String get(GeneticAlgorithmConfig config) {
+                return config.getCrossover().name().toLowerCase();
+            }
+        },
+        MUTATION(null) {
+
+            void set(GeneticAlgorithmConfig config, String value) {
+                config.setMutation(MutationOperator.parse(value));
+            }
+
+            String get(GeneticAlgorithmConfig config) {
+                return config.getMutation().name().toLowerCase();
+            }
+        },
+        SELECTION(null) {
+
+            void set(GeneticAlgorithmConfig config, String value) {
+                config.setSelection(SelectionScheme.parse(value));
+            }
+
+            String get(GeneticAlgorithmConfig config) {
+                return config.getSelection().name().toLowerCase();
+            }
+        },
+        TOURNAMENTSIZE(true) {
+
+            void set(GeneticAlgorithmConfig config, String value) {
+                config.setTournamentSize(Integer.parseInt(value));
+            }
+
+            String get(GeneticAlgorithmConfig config) {
+                return String.valueOf(config.getTournamentSize());
+            }
+        },
+        LOCALSEARCH(null) {
+
+            void set(GeneticAlgorithmConfig config, String value) {
+                config.setLocalSearch(LocalSearchMode.parse(value));
+            }
+
+            String get(GeneticAlgorithmConfig config) {
+                return config.getLocalSearch().name().toLowerCase();
+            }
+        },
+        NEIGHBORS(true) {
+
+            void set(GeneticAlgorithmConfig config, String value) {
+                config.setNeighbors(Integer.parseInt(value));
+            }
+
+            String get(GeneticAlgorithmConfig config) {
+                return String.valueOf(config.getNeighbors());
+            }
+        };
+        // True for whole numbers, false for decimals and null if values can't be drawn from a range
+        private final Boolean isWholeNumber;
+
+        Parameter(Boolean isWholeNumber) {
+            this.isWholeNumber = isWholeNumber;
+        }
+
+        abstract void set(GeneticAlgorithmConfig config, String value);
+
+        abstract String get(GeneticAlgorithmConfig config);
+
+        /**
+         *
+         * @param range min..max
+         * @param random
+         * @return Value drawn uniformly from the range. Decimals are rounded to four places, so drawn configurations can be told apart in the cache.
+         */
+        String draw(String[] range, Rng random) {
+            if (isWholeNumber) {
+                int min = Integer.parseInt(range[0].trim());
+                int max = Integer.parseInt(range[1].trim());
+                return String.valueOf(min + random.nextInt(max - min + 1));
+            }
+            double min = Double.parseDouble(range[0].trim());
+            double max = Double.parseDouble(range[1].trim());
+            return String.valueOf(Math.round((min + random.nextDouble() * (max - min)) * 10000.0) / 10000.0);
+        }
+    }
+    private final boolean isRandomSearch;
+    private final int samples;
+    private final int replications;
+    // Values of each parameter in the spec, in the order given. A range is a single value "min..max"
+    private final Map<Parameter, String[]> values;
+
+    private Sweep(boolean isRandomSearch, int samples, int replications, Map<Parameter, String[]> values) {
+        this.isRandomSearch = isRandomSearch;
+        this.samples = samples;
+        this.replications = replications;
+        this.values = values;
+    }
+
+    /**
+     *
+     * @param file
+     * @param template Parameters that aren't swept, used to check the values
+     * @return
+     * @throws IOException
+     */
+    static Sweep parse(File file, GeneticAlgorithmConfig template) throws IOException {
+        boolean isRandomSearch = false;
+        int samples = -1;
+        int replications = 1;
+        Map<Parameter, String[]> values = new LinkedHashMap<Parameter, String[]>();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            int lineNumber = 0;
+            LINES:
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int comment = line.indexOf('#');
+                if (comment != -1) {
+                    line = line.substring(0, comment);
+                }
+                if (line.trim().isEmpty()) {
+                    continue LINES;
+                }
+                int equals = line.indexOf('=');
+                if (equals == -1) {
+                    throw new RuntimeException("Expected name = values on line " + lineNumber + " of " + file);
+                }
+                String name = line.substring(0, equals).trim().toLowerCase();
+                String value = line.substring(equals + 1).trim();
+
+                if (name.equals("search")) {
+                    if (!value.equalsIgnoreCase("grid") && !value.equalsIgnoreCase("random")) {
+                        throw new RuntimeException("Expected grid or random search, instead found: " + value);
+                    }
+                    isRandomSearch = value.equalsIgnoreCase("random");
+                } else if (name.equals("samples")) {
+                    samples = Integer.parseInt(value);
+                } else if (name.equals("replications")) {
+                    replications = Integer.parseInt(value);
+                } else {
+                    Parameter parameter;
+                    try {
+                        parameter = Parameter.valueOf(name.toUpperCase());
+                    } catch (IllegalArgumentException e) {
+                        throw new RuntimeException("Unknown sweep parameter on line " + lineNumber + " of " + file + ": " + name);
+                    }
+                    if (values.containsKey(parameter)) {
+                        throw new RuntimeException("Parameter " + name + " is listed twice in " + file);
+                    }
+                    String[] list = value.split("\\s*,\\s*");
+                    if (list.length > 1 && value.contains("..")) {
+                        throw new RuntimeException("A range must be the only value of " + name + " on line " + lineNumber + " of " + file);
+                    }
+                    for (String item : list) {
+                        checkValue(parameter, item, template);
+                    }
+                    values.put(parameter, list);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        if (replications < 1) {
+            throw new RuntimeException("Sweep needs at least one replication");
+        }
+        if (isRandomSearch && samples < 1) {
+            throw new RuntimeException("Random search needs the number of samples");
+        }
+        for (Map.Entry<Parameter, String[]> entry : values.entrySet()) {
+            if (!isRandomSearch && isRange(entry.getValue())) {
+                throw new RuntimeException("Ranges can only be used with random search: " + entry.getKey().name().toLowerCase());
+            }
+        }
+        return new Sweep(isRandomSearch, samples, replications, values);
+    }
+
+    private static void checkValue(Parameter parameter, String item, GeneticAlgorithmConfig template) {
+        GeneticAlgorithmConfig config = template.copy();
+        String[] range = item.split("\\.\\.", -1);
+        if (range.length == 2) {
+            if (parameter.isWholeNumber == null) {
+                throw new RuntimeException("Parameter " + parameter.name().toLowerCase() + " can't take a range: " + item);
+            }
+            parameter.set(config, range[0].trim());
+            parameter.set(config, range[1].trim());
+            if (Double.parseDouble(range[0]) > Double.parseDouble(range[1])) {
+                throw new RuntimeException("Range of " + parameter.name().toLowerCase() + " must go from smallest to largest: " + item);
+            }
+        } else {
+            parameter.set(config, item);
+        }
+    }
+
+    private static boolean isRange(String[] list) {
+        return list.length == 1 && list[0].contains("..");
+    }
+
+    /**
+     * <p>Every combination of values for grid search, otherwise the samples drawn in order, so a random search with more samples starts with the same configurations.</p>
+     * @param template Parameters that aren't swept
+     * @param random Draws random search samples
+     * @return
+     */
+    List<GeneticAlgorithmConfig> getConfigurations(GeneticAlgorithmConfig template, Rng random) {
+        List<GeneticAlgorithmConfig> configs = new ArrayList<GeneticAlgorithmConfig>();
+        final Parameter[] parameters = values.keySet().toArray(new Parameter[values.size()]);
+
+        if (isRandomSearch) {
+            for (int sample = 0; sample < samples; sample++) {
+                GeneticAlgorithmConfig config = template.copy();
+                for (Parameter parameter : parameters) {
+                    String[] list = values.get(parameter);
+                    if (isRange(list)) {
+                        parameter.set(config, parameter.draw(list[0].split("\\.\\."), random));
+                    } else {
+                        parameter.set(config, list[random.nextInt(list.length)].trim());
+                    }
+                }
+                configs.add(config);
+            }
+            return configs;
+        }
+
+        // Count through the combinations like an odometer, the last parameter changing fastest
+        int[] indices = new int[parameters.length];
+        COMBINATIONS:
+        while (true) {
+            GeneticAlgorithmConfig config = template.copy();
+            for (int p = 0; p < parameters.length; p++) {
+                parameters[p].set(config, values.get(parameters[p])[indices[p]]);
+            }
+            configs.add(config);
+
+            for (int p = parameters.length - 1; p >= 0; p--) {
+                if (++indices[p] < values.get(parameters[p]).length) {
+                    continue COMBINATIONS;
+                }
+                indices[p] = 0;
+            }
+            return configs;
+        }
+    }
+
+    /**
+     * <p>Run every configuration and replication that isn't in the cache, then print the configurations ranked by mean distance.</p>
+     * @param map
+     * @param template Parameters that aren't swept
+     * @param threads Runs to do at the same time
+     * @param breedingPool Shared by runs with more than one worker, or null
+     * @param cache
+     * @param random Seeds the replications and draws random search samples
+     * @param out
+     * @throws Exception
+     */
+    void run(final SalesmanMap map, GeneticAlgorithmConfig template, int threads, final ExecutorService breedingPool, final SweepCache cache, Rng random, final PrintStream out) throws Exception {
+        final List<GeneticAlgorithmConfig> configs = getConfigurations(template, random.split());
+        final long[] seeds = new long[replications];
+        for (int replication = 0; replication < replications; replication++) {
+            seeds[replication] = random.nextLong();
+        }
+        final String fingerprint = fingerprint(map);
+        final String[] descriptions = new String[configs.size()];
+        final double[][] results = new double[configs.size()][replications];
+
+        out.println();
+        out.println(">>> SWEEPING " + configs.size() + " CONFIGURATIONS, " + replications + " RUNS EACH <<<");
+
+        int cached = 0;
+        List<Callable<Object>> runs = new ArrayList<Callable<Object>>();
+        for (int c = 0; c < configs.size(); c++) {
+            descriptions[c] = describe(configs.get(c));
+            for (int r = 0; r < replications; r++) {
+                Double distance = cache.get(fingerprint, seeds[r], descriptions[c]);
+                if (distance != null) {
+                    results[c][r] = distance;
+                    cached++;
+                    continue;
+                }
+                final int config = c;
+                final int replication = r;
+                runs.add(new Callable<Object>() {
+
+                    public Object call() throws Exception {
+                        double distance = runOnce(map, configs.get(config), breedingPool, new Rng(seeds[replication]));
+                        results[config][replication] = distance;
+                        cache.put(fingerprint, seeds[replication], descriptions[config], distance);
+                        synchronized (out) {
+                            out.println("    Configuration #" + (config + 1) + ", run #" + (replication + 1) + ": " + distance);
+                        }
+                        return null;
+                    }
+                });
+            }
+        }
+        out.println(cached + " runs are in the cache, " + runs.size() + " left to run.");
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            for (Future<Object> future : pool.invokeAll(runs)) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        printRankings(configs, results, out);
+    }
+
+    private void printRankings(List<GeneticAlgorithmConfig> configs, final double[][] results, PrintStream out) {
+        final double[] means = new double[configs.size()];
+        Integer[] order = new Integer[configs.size()];
+        for (int c = 0; c < configs.size(); c++) {
+            double total = 0;
+            for (double distance : results[c]) {
+                total += distance;
+            }
+            means[c] = total / replications;
+            order[c] = c;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            public int compare(Integer a, Integer b) {
+                return Double.compare(means[a], means[b]);
+            }
+        });
+
+        out.println();
+        out.println("--- Configurations ranked by mean distance ---:");
+        for (int rank = 0; rank < order.length; rank++) {
+            int c = order[rank];
+            double best = Double.MAX_VALUE;
+            double squares = 0;
+            for (double distance : results[c]) {
+                best = Math.min(best, distance);
+                squares += (distance - means[c]) * (distance - means[c]);
+            }
+            StringBuilder line = new StringBuilder();
+            line.append("    ").append(rank + 1).append(": mean ").append(means[c]);
+            line.append(", best ").append(best);
+            line.append(", standard deviation ").append(Math.sqrt(squares / replications));
+            line.append(" (#").append(c + 1);
+            for (Parameter parameter : values.keySet()) {
+                line.append(' ').append(parameter.name().toLowerCase()).append('=').append(parameter.get(configs.get(c)));
+            }
+            line.append(')');
+            out.println(line);
+        }
+        out.println();
+    }
+
+    private static double runOnce(SalesmanMap map, GeneticAlgorithmConfig config, ExecutorService breedingPool, Rng random) throws Exception {
+        if (config.getIslands() > 1) {
+            return new IslandModel(map, config, breedingPool, random, Solver.DISCARD).run();
+        }
+        return new GeneticAlgorithm(map, config, breedingPool, random, Solver.DISCARD).run();
+    }
+
+    /**
+     *
+     * @param config
+     * @return Every parameter that changes the result of a run, so equal descriptions mean equal runs for the same map and seed
+     */
+    static String describe(GeneticAlgorithmConfig config) {
+        StringBuilder description = new StringBuilder();
+        for (Parameter parameter : Parameter.values()) {
+            description.append(parameter.name().toLowerCase()).append('=').append(parameter.get(config)).append(' ');
+        }
+        description.append("workers=").append(config.getWorkers());
+        description.append(" islands=").append(config.getIslands());
+        if (config.getIslands() > 1) {
+            description.append(" migrationinterval=").append(config.getMigrationInterval());
+            description.append(" migrants=").append(config.getMigrants());
+            description.append(" topology=").append(config.getTopology().name().toLowerCase());
+        }
+        // Only when set, so results cached before early termination existed still match
+        if (config.getStagnationGenerations() > 0) {
+            description.append(" stagnation=").append(config.getStagnationGenerations());
+        }
+        if (config.getTargetDistance() > 0) {
+            description.append(" targetdistance=").append(config.getTargetDistance());
+        }
+        if (config.getTimeLimitMillis() > 0) {
+            // Depends on the machine, so a cached result is only as good as the one that made it
+            description.append(" timelimit=").append(config.getTimeLimitMillis());
+        }
+        if (config.getDiversityThreshold() > 0) {
+            description.append(" diversity=").append(config.getDiversityThreshold());
+            description.append(" diversityresponse=").append(config.getDiversityResponse().name().toLowerCase());
+        }
+        return description.toString();
+    }
+
+    /**
+     *
+     * @param map
+     * @return 64-bit FNV-1a hash of the map as sent to islands, in hex
+     * @throws IOException
+     */
+    static String fingerprint(SalesmanMap map) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        MigrationProtocol.writeMap(out, map);
+        out.flush();
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes.toByteArray()) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return Long.toHexString(hash);
+    }
+}
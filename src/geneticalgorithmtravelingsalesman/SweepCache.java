@@ -0,0 +1,97 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Results of finished sweep runs, kept on disk so an interrupted or extended sweep only runs what is missing.</p>
+ * <p>A cached result is what that configuration and seed gave, but runs with more than one island (or a time limit) aren't reproducible, so running them again could give a different distance.</p>
+ * <p>One line per run, appended and flushed as each run finishes: map fingerprint, seed, configuration and distance, separated by tabs and ended by a newline. A last line without its newline was cut short by a kill, so is dropped when loading, even if what is left of the distance still parses.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class SweepCache implements Closeable {
+
+    private final Map<String, Double> results = new HashMap<String, Double>();
+    private final Writer writer;
+
+    /**
+     *
+     * @param file Created if missing
+     * @throws IOException
+     */
+    SweepCache(File file) throws IOException {
+        if (file.exists()) {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            int length = bytes.length;
+            while (length > 0 && bytes[length - 1] != '\n') {
+                length--;
+            }
+            if (length < bytes.length) {
+                // Last line has no newline, so was cut short by a kill, e.g. part way through the distance. Drop it, so runs appended later don't finish it.
+                RandomAccessFile truncate = new RandomAccessFile(file, "rw");
+                try {
+                    truncate.setLength(length);
+                } finally {
+                    truncate.close();
+                }
+            }
+
+            String text = new String(bytes, 0, length, "UTF-8");
+            int start = 0;
+            LINES:
+            while (start < text.length()) {
+                int end = text.indexOf('\n', start);
+                String[] fields = text.substring(start, end).split("\t");
+                start = end + 1;
+                if (fields.length != 4) {
+                    continue LINES;
+                }
+                try {
+                    results.put(getKey(fields[0], Long.parseLong(fields[1]), fields[2]), Double.parseDouble(fields[3]));
+                } catch (NumberFormatException e) {
+                    continue LINES;
+                }
+            }
+        }
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+    }
+
+    /**
+     *
+     * @param map Fingerprint of the map, from Sweep.fingerprint
+     * @param seed
+     * @param config Description of the configuration, from Sweep.describe
+     * @return Distance of the run, or null if it hasn't been run
+     */
+    synchronized Double get(String map, long seed, String config) {
+        return results.get(getKey(map, seed, config));
+    }
+
+    synchronized void put(String map, long seed, String config, double distance) throws IOException {
+        results.put(getKey(map, seed, config), distance);
+        // Only a line that ends with a newline was written in full
+        writer.write(map + "\t" + seed + "\t" + config + "\t" + distance + "\n");
+        writer.flush();
+    }
+
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    private static String getKey(String map, long seed, String config) {
+        return map + "\t" + seed + "\t" + config;
+    }
+}
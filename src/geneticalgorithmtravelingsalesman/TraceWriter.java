@@ -0,0 +1,266 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Prints the trace of each generation (-P) on a background thread, so the genetic algorithm doesn't wait on console I/O.</p>
+ * <p>Lines are formatted into a fixed set of reusable records, which are handed to the writer thread and returned once written, so tracing doesn't allocate. If every record is waiting to be written, the next trace line waits for one. Sampling and the rate limit drop lines before they are formatted.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+class TraceWriter implements Closeable {
+
+    // How long the writer thread waits for more lines before flushing what it has printed
+    private static final long FLUSH_DELAY_MILLIS = 20;
+
+    private final int sampleInterval;
+    private final int maxPerSecond;
+    private final BlockingQueue<Record> free;
+    private final BlockingQueue<Record> pending = new LinkedBlockingQueue<Record>();
+    private final Thread thread;
+    private final AtomicLong dropped = new AtomicLong();
+    // Rate limit: lines left in the current second
+    private long windowStart = 0;
+    private int windowCount = 0;
+    // Only used by the writer thread
+    private final Map<PrintStream, Writer> writers = new IdentityHashMap<PrintStream, Writer>();
+    private final List<Record> batch = new ArrayList<Record>();
+    private char[] chars = new char[256];
+
+    /**
+     * <p>One trace line, and where to print it.</p>
+     */
+    static final class Record {
+
+        final StringBuilder line = new StringBuilder(256);
+        private PrintStream out;
+        // Flush and close requests only
+        private CountDownLatch written;
+        private boolean isClose;
+    }
+
+    /**
+     * 
+     * @param capacity Number of lines that can be waiting to be written
+     * @param sampleInterval Trace only every this many generations
+     * @param maxPerSecond Drop lines beyond this many per second. 0 for no limit.
+     */
+    TraceWriter(int capacity, int sampleInterval, int maxPerSecond) {
+        if (capacity < 1 || sampleInterval < 1 || maxPerSecond < 0) {
+            throw new RuntimeException("Expected a positive capacity and sample interval, and a rate that isn't negative. Instead found: " + capacity + ", " + sampleInterval + ", " + maxPerSecond);
+        }
+        this.sampleInterval = sampleInterval;
+        this.maxPerSecond = maxPerSecond;
+        this.free = new ArrayBlockingQueue<Record>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            free.add(new Record());
+        }
+        this.thread = new Thread(new Runnable() {
+
+            public void run() {
+                write();
+            }
+        }, "trace-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * 
+     * @param generation
+     * @return True if this generation should be traced
+     */
+    boolean isSampled(int generation) {
+        return generation % sampleInterval == 0;
+    }
+
+    /**
+     * <p>Get an empty record to format a line into, then pass it to submit. Waits if every record is in use.</p>
+     * @param out Where to print the line
+     * @return Null if the rate limit has been reached, in which case the line is dropped
+     * @throws InterruptedException
+     */
+    Record startRecord(PrintStream out) throws InterruptedException {
+        if (maxPerSecond > 0 && !acquirePermit()) {
+            dropped.incrementAndGet();
+            return null;
+        }
+        Record record = free.take();
+        record.line.setLength(0);
+        record.out = out;
+        return record;
+    }
+
+    /**
+     * 
+     * @param record From startRecord, with the line formatted
+     */
+    void submit(Record record) {
+        pending.add(record);
+    }
+
+    private synchronized boolean acquirePermit() {
+        long now = System.nanoTime();
+        if (now - windowStart >= 1000000000L) {
+            windowStart = now;
+            windowCount = 0;
+        }
+        if (windowCount >= maxPerSecond) {
+            return false;
+        }
+        windowCount++;
+        return true;
+    }
+
+    /**
+     * <p>Trace the best itinerary of a generation, if it is sampled and under the rate limit.</p>
+     * @param out
+     * @param label
+     * @param generation
+     * @param itinerary
+     * @param distance
+     * @throws InterruptedException
+     */
+    void traceBest(PrintStream out, String label, int generation, int[] itinerary, double distance) throws InterruptedException {
+        if (!isSampled(generation)) {
+            return;
+        }
+        Record record = startRecord(out);
+        if (record != null) {
+            formatBest(record.line, label, generation, itinerary, distance);
+            submit(record);
+        }
+    }
+
+    /**
+     * 
+     * @param line Appended to
+     * @param label
+     * @param generation
+     * @param itinerary
+     * @param distance
+     */
+    static void formatBest(StringBuilder line, String label, int generation, int[] itinerary, double distance) {
+        line.append("  ").append(label).append("Best solution in generation #").append(generation).append(": ");
+        Itineraries.appendItinerary(line, itinerary, 0, itinerary.length);
+        line.append(" -> ").append(distance);
+    }
+
+    /**
+     * 
+     * @return Number of lines dropped by the rate limit
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * <p>Wait until every line submitted so far has been printed.</p>
+     * @throws InterruptedException
+     */
+    void flush() throws InterruptedException {
+        Record marker = new Record();
+        marker.written = new CountDownLatch(1);
+        pending.add(marker);
+        marker.written.await();
+    }
+
+    /**
+     * <p>Print every line submitted so far, then stop the writer thread.</p>
+     */
+    public void close() throws IOException {
+        Record marker = new Record();
+        marker.written = new CountDownLatch(1);
+        marker.isClose = true;
+        pending.add(marker);
+        try {
+            marker.written.await();
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while closing trace", e);
+        }
+    }
+
+    /**
+     * <p>Writer thread: print lines in batches, flushing once no more lines have arrived for a little while.</p>
+     */
+    private void write() {
+        try {
+            while (true) {
+                Record first = pending.poll(FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    flushWriters();
+                    first = pending.take();
+                }
+                batch.add(first);
+                pending.drainTo(batch);
+                for (Record record : batch) {
+                    if (record.written != null) {
+                        flushWriters();
+                        record.written.countDown();
+                        if (record.isClose) {
+                            return;
+                        }
+                        continue;
+                    }
+                    writeLine(record);
+                    record.out = null;
+                    free.add(record);
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // Daemon thread, so only interrupted when the JVM is exiting
+        }
+    }
+
+    private void writeLine(Record record) {
+        Writer writer = writers.get(record.out);
+        if (writer == null) {
+            writer = new OutputStreamWriter(record.out);
+            writers.put(record.out, writer);
+        }
+        int length = record.line.length();
+        if (chars.length < length + 1) {
+            chars = new char[Math.max(length + 1, chars.length * 2)];
+        }
+        record.line.getChars(0, length, chars, 0);
+        chars[length] = '\n';
+        try {
+            writer.write(chars, 0, length + 1);
+        } catch (IOException e) {
+            // Same as PrintStream, which never throws
+        }
+    }
+
+    /**
+     * <p>Flush and forget the writers, so per-trial output streams can be read and garbage collected.</p>
+     */
+    private void flushWriters() {
+        for (Writer writer : writers.values()) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                // Same as PrintStream, which never throws
+            }
+        }
+        writers.clear();
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>The permutation-preserving operators must always produce a valid itinerary, since their children are never repaired.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+public class CrossoverOperatorTest {
+
+    private static final CrossoverOperator[] PERMUTATION_OPERATORS = {CrossoverOperator.OX, CrossoverOperator.PMX, CrossoverOperator.ERX, CrossoverOperator.CYCLE};
+
+    @Test
+    public void childrenArePermutations() {
+        for (int numSites : new int[]{2, 3, 7, 40}) {
+            SalesmanMap map = SalesmanMap.generate(numSites, 100, 100, new Rng(numSites));
+            Breeder breeder = new Breeder(map, new GeneticAlgorithmConfig(), new Rng(11));
+            Rng random = new Rng(5);
+            int[] tours = new int[numSites * 2];
+            int[] parent = new int[numSites];
+            int[] child = new int[numSites];
+            for (CrossoverOperator operator : PERMUTATION_OPERATORS) {
+                for (int trial = 0; trial < 200; trial++) {
+                    Itineraries.fillRandomItinerary(parent, random);
+                    System.arraycopy(parent, 0, tours, 0, numSites);
+                    Itineraries.fillRandomItinerary(parent, random);
+                    System.arraycopy(parent, 0, tours, numSites, numSites);
+
+                    operator.cross(tours, 0, numSites, child, breeder);
+                    assertIsPermutation(operator + " with " + numSites + " sites, trial " + trial, child);
+                }
+            }
+        }
+    }
+
+    static void assertIsPermutation(String message, int[] itinerary) {
+        int[] sorted = itinerary.clone();
+        Arrays.sort(sorted);
+        for (int site = 0; site < sorted.length; site++) {
+            assertEquals(message + ": " + Arrays.toString(itinerary), site, sorted[site]);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>A mutated copy of a parent is scored by adding the change each mutation returns, so that change must match scoring the whole itinerary again, for open and closed tours.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+public class IncrementalScoringTest {
+
+    @Test
+    public void mutationDeltasMatchRescoring() {
+        for (boolean isClosedTour : new boolean[]{false, true}) {
+            for (int numSites : new int[]{2, 3, 7, 40}) {
+                SalesmanMap map = SalesmanMap.generate(numSites, 1000, 1000, new Rng(numSites));
+                map.setClosedTour(isClosedTour);
+                for (double mutationRate : new double[]{0.05, 0.5, 1.0}) {
+                    GeneticAlgorithmConfig config = new GeneticAlgorithmConfig();
+                    config.setMutationRate(mutationRate);
+                    Breeder breeder = new Breeder(map, config, new Rng(17));
+                    int[] child = new int[numSites];
+                    for (MutationOperator operator : MutationOperatorTest.PERMUTATION_OPERATORS) {
+                        Itineraries.fillRandomItinerary(child, breeder.getRandom());
+                        for (int trial = 0; trial < 200; trial++) {
+                            double before = Itineraries.getTotalTravel(child, map);
+                            double delta = operator.mutate(child, breeder);
+                            String message = operator + " with " + numSites + (isClosedTour ? " sites, closed," : " sites, open,") + " at rate " + mutationRate + ", trial " + trial;
+                            assertEquals(message, Itineraries.getTotalTravel(child, map), before + delta, 1e-6);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
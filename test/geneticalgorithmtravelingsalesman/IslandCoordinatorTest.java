@@ -0,0 +1,88 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Runs a coordinator and two islands in this JVM, connected over TCP on localhost, just as separate processes would be.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+public class IslandCoordinatorTest {
+
+    private static final int ISLANDS = 2;
+
+    @Test(timeout = 60000)
+    public void runsTrialsAcrossIslands() throws Exception {
+        SalesmanMap map = SalesmanMap.generate(20, 100, 100, new Rng(1));
+        GeneticAlgorithmConfig config = new GeneticAlgorithmConfig();
+        config.setPopulationSize(40);
+        config.setGenerations(100);
+        config.setPrintBestOfEachGeneration(false);
+        config.setIslands(ISLANDS);
+        config.setMigrationInterval(10);
+
+        // Port 0, so the system picks a free one
+        IslandCoordinator coordinator = new IslandCoordinator(0, ISLANDS);
+        final int port = coordinator.getPort();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final ByteArrayOutputStream[] outputs = new ByteArrayOutputStream[ISLANDS];
+        Thread[] islands = new Thread[ISLANDS];
+        for (int i = 0; i < ISLANDS; i++) {
+            outputs[i] = new ByteArrayOutputStream();
+            final PrintStream out = new PrintStream(outputs[i], true);
+            islands[i] = new Thread(new Runnable() {
+
+                public void run() {
+                    try {
+                        IslandWorker.run("localhost", port, out);
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            }, "test-island-" + (i + 1));
+            islands[i].start();
+        }
+
+        try {
+            coordinator.awaitIslands(new PrintStream(new ByteArrayOutputStream()));
+            Rng random = new Rng(7);
+            for (int trial = 0; trial < 2; trial++) {
+                double distance = coordinator.runTrial(map, config, random);
+                int[] best = coordinator.getBestSolution();
+                assertIsItinerary(best, map.getNumSites());
+                assertEquals(Itineraries.getTotalTravel(best, map), distance, 1e-9);
+            }
+        } finally {
+            coordinator.shutdown();
+        }
+
+        for (int i = 0; i < ISLANDS; i++) {
+            islands[i].join(10000);
+            assertFalse("Island #" + (i + 1) + " didn't exit on shutdown", islands[i].isAlive());
+            String output = outputs[i].toString("UTF-8");
+            assertTrue(output, output.contains("RUNNING TRIAL #2 AS ISLAND #"));
+        }
+        assertNull(failure.get());
+    }
+
+    private static void assertIsItinerary(int[] itinerary, int numSites) {
+        assertEquals(numSites, itinerary.length);
+        int[] sorted = itinerary.clone();
+        Arrays.sort(sorted);
+        for (int site = 0; site < numSites; site++) {
+            assertEquals(site, sorted[site]);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import org.junit.Test;
+
+/**
+ * <p>The permutation-preserving operators must move sites around without ever breaking the itinerary, since their children are never repaired.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+public class MutationOperatorTest {
+
+    static final MutationOperator[] PERMUTATION_OPERATORS = {MutationOperator.SWAP, MutationOperator.INVERSION, MutationOperator.INSERTION, MutationOperator.SCRAMBLE};
+
+    @Test
+    public void mutantsArePermutations() {
+        for (int numSites : new int[]{2, 3, 7, 40}) {
+            SalesmanMap map = SalesmanMap.generate(numSites, 100, 100, new Rng(numSites));
+            for (double mutationRate : new double[]{0.05, 0.5, 1.0}) {
+                GeneticAlgorithmConfig config = new GeneticAlgorithmConfig();
+                config.setMutationRate(mutationRate);
+                Breeder breeder = new Breeder(map, config, new Rng(13));
+                int[] child = new int[numSites];
+                for (MutationOperator operator : PERMUTATION_OPERATORS) {
+                    Itineraries.fillRandomItinerary(child, breeder.getRandom());
+                    for (int trial = 0; trial < 200; trial++) {
+                        operator.mutate(child, breeder);
+                        CrossoverOperatorTest.assertIsPermutation(operator + " with " + numSites + " sites at rate " + mutationRate + ", trial " + trial, child);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package geneticalgorithmtravelingsalesman;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Runs a SolveService on a free port of localhost, and sends it requests over HTTP.</p>
+ * @author Bryan Smith - bryanesmith@gmail.com
+ */
+public class SolveServiceTest {
+
+    private static final long MAX_TIME_LIMIT_MILLIS = 5000;
+    private SolveService service;
+    private String baseUrl;
+
+    @Before
+    public void startService() throws IOException {
+        // One solve at a time and none waiting, so a second request at once is refused
+        startService(0, MAX_TIME_LIMIT_MILLIS);
+    }
+
+    private void startService(int queue, long maxTimeLimitMillis) throws IOException {
+        GeneticAlgorithmConfig template = new GeneticAlgorithmConfig();
+        template.setPopulationSize(20);
+        template.setPrintBestOfEachGeneration(false);
+        service = new SolveService(template, 1, queue, 1000, 10, maxTimeLimitMillis);
+        service.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        baseUrl = "http://127.0.0.1:" + service.getAddress().getPort();
+    }
+
+    @After
+    public void stopService() {
+        service.stop();
+    }
+
+    @Test(timeout = 30000)
+    public void solvesSites() throws IOException {
+        HttpURLConnection connection = post("/solve?seed=3&generations=50", "application/json", sitesJson(5).getBytes("UTF-8"));
+        assertEquals(200, connection.getResponseCode());
+        String body = read(connection.getInputStream());
+        assertTrue(body, body.startsWith("{\"distance\":"));
+        assertTrue(body, body.contains("\"generations\":50"));
+    }
+
+    @Test(timeout = 30000)
+    public void refusesBurstOverCapacity() throws Exception {
+        final byte[] sites = sitesJson(30).getBytes("UTF-8");
+        ExecutorService client = Executors.newSingleThreadExecutor();
+        try {
+            // Enough generations that the solve runs until its time limit, which the burst arrives well within
+            Future<Integer> running = client.submit(new Callable<Integer>() {
+
+                public Integer call() throws Exception {
+                    return post("/solve?timelimit=3000&generations=100000000", "application/json", sites).getResponseCode();
+                }
+            });
+            while (!read(get("/status").getInputStream()).contains("\"admitted\":1")) {
+                Thread.sleep(10);
+            }
+
+            final int burst = 3;
+            for (int i = 0; i < burst; i++) {
+                HttpURLConnection connection = post("/solve", "application/json", sites);
+                assertEquals(503, connection.getResponseCode());
+                assertEquals("1", connection.getHeaderField("Retry-After"));
+            }
+            String status = read(get("/status").getInputStream());
+            assertTrue(status, status.contains("\"rejected\":" + burst));
+
+            // Refusing the burst didn't disturb the admitted solve
+            assertEquals(200, (int) running.get());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void rejectsBadRequests() throws IOException {
+        assertEquals(400, post("/solve", "application/json", "{\"sites\":[[0,0],[1,".getBytes("UTF-8")).getResponseCode());
+        assertEquals(400, post("/solve", "application/json", "{\"sites\":[[0,0],[1]]}".getBytes("UTF-8")).getResponseCode());
+        assertEquals(413, post("/solve", "application/json", sitesJson(1001).getBytes("UTF-8")).getResponseCode());
+        assertEquals(405, get("/solve").getResponseCode());
+    }
+
+    @Test(timeout = 30000)
+    public void refusedRequestsGiveBackTheirPlace() throws IOException {
+        byte[] sites = sitesJson(5).getBytes("UTF-8");
+        // A mating pool of 1, which the genetic algorithm can't run. More requests than the service has places.
+        for (int i = 0; i < 3; i++) {
+            assertEquals(400, post("/solve?population=10", "application/json", sites).getResponseCode());
+        }
+        assertEquals(200, post("/solve?generations=10", "application/json", sites).getResponseCode());
+        assertTrue(read(get("/status").getInputStream()).contains("\"admitted\":0"));
+    }
+
+    @Test(timeout = 30000)
+    public void batchedSolvesEachGetTheirBudget() throws Exception {
+        service.stop();
+        // Batched solves get 8000 / 16 = 500 ms each by default, well past the wait for the worker
+        startService(8, 8000);
+        final byte[] largeSites = sitesJson(30).getBytes("UTF-8");
+        final byte[] smallSites = sitesJson(5).getBytes("UTF-8");
+        final int batched = 4;
+        ExecutorService client = Executors.newFixedThreadPool(batched + 2);
+        try {
+            // Too many sites to batch, so holds the one worker while the small requests gather
+            Future<String> running = client.submit(new Callable<String>() {
+
+                public String call() throws Exception {
+                    return read(post("/solve?timelimit=200&generations=100000000", "application/json", largeSites).getInputStream());
+                }
+            });
+            while (!read(get("/status").getInputStream()).contains("\"admitted\":1")) {
+                Thread.sleep(10);
+            }
+
+            List<Future<String>> small = new ArrayList<Future<String>>();
+            for (int i = 0; i < batched + 1; i++) {
+                // The last asks for more than a batched solve's budget, so gets a worker of its own
+                final String path = i < batched ? "/solve?generations=100000000" : "/solve?timelimit=4000&generations=100000000";
+                small.add(client.submit(new Callable<String>() {
+
+                    public String call() throws Exception {
+                        return read(post(path, "application/json", smallSites).getInputStream());
+                    }
+                }));
+            }
+            for (Future<String> response : small) {
+                String body = response.get();
+                // Run one after another, but none started with its budget spent
+                assertTrue(body, body.contains("\"stopReason\":\"ran out of time"));
+                assertTrue(body, getGenerations(body) > 10);
+            }
+            running.get();
+
+            String status = read(get("/status").getInputStream());
+            assertTrue(status, status.contains("\"completed\":" + (batched + 2)));
+            assertTrue(status, status.contains("\"batches\":1"));
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    private static int getGenerations(String body) {
+        Matcher matcher = Pattern.compile("\"generations\":(\\d+)").matcher(body);
+        assertTrue(body, matcher.find());
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    private HttpURLConnection post(String path, String contentType, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", contentType);
+        connection.setDoOutput(true);
+        OutputStream out = connection.getOutputStream();
+        try {
+            out.write(body);
+        } finally {
+            out.close();
+        }
+        return connection;
+    }
+
+    private HttpURLConnection get(String path) throws IOException {
+        return (HttpURLConnection) new URL(baseUrl + path).openConnection();
+    }
+
+    /**
+     *
+     * @return Sites on a circle, as a solve request
+     */
+    private static String sitesJson(int numSites) {
+        StringBuilder json = new StringBuilder("{\"sites\":[");
+        for (int site = 0; site < numSites; site++) {
+            double angle = 2 * Math.PI * site / numSites;
+            json.append(site > 0 ? "," : "").append('[').append(100 * Math.cos(angle)).append(',').append(100 * Math.sin(angle)).append(']');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return bytes.toString("UTF-8");
+    }
+}